@@ -0,0 +1,341 @@
+package com.qmdeve.liteimagecompressor.codec;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A maxSize threshold, bounded decode and the {@link TargetSizeSearch} quality search on top
+ * of any {@link ImageCodec}, for compressing off-device. It mirrors the core of
+ * LiteImageCompressor but is a separate pipeline: there is no header sniffing, result cache,
+ * EXIF handling, tiled decode, format selection or SSIM ceiling. Thread safe; batches keep
+ * at most maxInFlight items decoded at once.
+ */
+public class CodecCompressor<P extends PixelBuffer> {
+    private final ImageCodec<P> codec;
+    private final int maxSize;
+    private final int quality;
+    private final ImageFormat format;
+    private final int maxWidth;
+    private final int maxHeight;
+    private final boolean fitToMaxSize;
+    private final int minQuality;
+    private final int maxEncodePasses;
+    private final boolean downscaleToFit;
+    private final int maxInFlight;
+    private final Executor executor;
+
+    private CodecCompressor(Builder<P> builder) {
+        this.codec = builder.codec;
+        this.maxSize = builder.maxSize;
+        this.quality = builder.quality;
+        this.format = builder.format;
+        this.maxWidth = builder.maxWidth;
+        this.maxHeight = builder.maxHeight;
+        this.fitToMaxSize = builder.fitToMaxSize;
+        this.minQuality = builder.minQuality;
+        this.maxEncodePasses = builder.maxEncodePasses;
+        this.downscaleToFit = builder.downscaleToFit;
+        this.maxInFlight = builder.maxInFlight > 0 ? builder.maxInFlight : DefaultExecutorHolder.POOL_SIZE;
+        this.executor = builder.executor != null ? builder.executor : DefaultExecutorHolder.INSTANCE;
+    }
+
+    public CodecResult compress(File file) {
+        if (file == null || !file.exists()) {
+            return CodecResult.builder()
+                    .setSuccess(false)
+                    .setErrorMessage("File does not exist")
+                    .build();
+        }
+
+        long originalSize = file.length();
+        if (originalSize / 1024 <= maxSize) {
+            return unchanged(null, originalSize, null);
+        }
+        try {
+            return compressPixels(codec.decode(file, maxWidth, maxHeight), originalSize);
+        } catch (Exception e) {
+            return CodecResult.builder()
+                    .setSuccess(false)
+                    .setErrorMessage("Compression failed: " + e.getMessage())
+                    .build();
+        }
+    }
+
+    public CodecResult compress(byte[] data) {
+        if (data == null) {
+            return CodecResult.builder()
+                    .setSuccess(false)
+                    .setErrorMessage("Data is null")
+                    .build();
+        }
+
+        if (data.length / 1024 <= maxSize) {
+            return unchanged(data, data.length, null);
+        }
+        try {
+            return compressPixels(codec.decode(data, data.length, maxWidth, maxHeight), data.length);
+        } catch (Exception e) {
+            return CodecResult.builder()
+                    .setSuccess(false)
+                    .setErrorMessage("Compression failed: " + e.getMessage())
+                    .build();
+        }
+    }
+
+    /**
+     * Compresses every file on the executor, keeping at most maxInFlight items decoding or
+     * encoding at once, and waits for all of them. Results are in the same order as
+     * {@code files}. Throws CompletionException if the executor rejects an item.
+     */
+    public List<CodecResult> compressBatch(List<File> files) {
+        return new BatchTask(files).run();
+    }
+
+    private CodecResult compressPixels(P pixels, long originalSize) throws Exception {
+        if (pixels == null) {
+            return CodecResult.builder()
+                    .setSuccess(false)
+                    .setErrorMessage("Failed to load original bitmap")
+                    .build();
+        }
+
+        TargetSizeSearch.Outcome encoded;
+        try {
+            encoded = TargetSizeSearch.builder(codec)
+                    .setTargetBytes((long) maxSize * 1024)
+                    .setMinQuality(minQuality)
+                    .setMaxEncodePasses(maxEncodePasses)
+                    .setFitToTarget(fitToMaxSize)
+                    .setDownscaleToFit(downscaleToFit)
+                    .build()
+                    .encode(pixels, format, quality);
+        } finally {
+            pixels.release();
+        }
+
+        long compressedSize = encoded.data.size();
+        if (compressedSize >= originalSize) {
+            return unchanged(null, originalSize, "Compressed image is larger than original, return original");
+        }
+        return CodecResult.builder()
+                .setSuccess(true)
+                .setData(Arrays.copyOf(encoded.data.buffer(), (int) compressedSize))
+                .setFormat(format)
+                .setSize(encoded.width, encoded.height)
+                .setOriginalSize(originalSize)
+                .setCompressedSize(compressedSize)
+                .setWasCompressed(true)
+                .build();
+    }
+
+    private static CodecResult unchanged(byte[] data, long originalSize, String message) {
+        return CodecResult.builder()
+                .setSuccess(true)
+                .setData(data)
+                .setOriginalSize(originalSize)
+                .setCompressedSize(originalSize)
+                .setWasCompressed(false)
+                .setErrorMessage(message)
+                .build();
+    }
+
+    /**
+     * Starts maxInFlight items and schedules the next one as each finishes, so a large batch
+     * never has more than that many decoded images in memory.
+     */
+    private class BatchTask {
+        private final List<File> files;
+        private final CodecResult[] results;
+        private final CompletableFuture<List<CodecResult>> future = new CompletableFuture<>();
+        private final AtomicInteger nextIndex = new AtomicInteger();
+        private final AtomicInteger completedCount = new AtomicInteger();
+
+        BatchTask(List<File> files) {
+            this.files = files;
+            this.results = new CodecResult[files.size()];
+        }
+
+        List<CodecResult> run() {
+            if (files.isEmpty()) {
+                return new ArrayList<>();
+            }
+            int initial = Math.min(maxInFlight, files.size());
+            for (int i = 0; i < initial; i++) {
+                scheduleNext();
+            }
+            return future.join();
+        }
+
+        private void scheduleNext() {
+            int index = nextIndex.getAndIncrement();
+            if (index >= files.size() || future.isDone()) {
+                return;
+            }
+            try {
+                executor.execute(() -> runItem(index));
+            } catch (RuntimeException e) {
+                future.completeExceptionally(e);
+            }
+        }
+
+        private void runItem(int index) {
+            try {
+                results[index] = compress(files.get(index));
+            } catch (Throwable t) {
+                // Errors such as OutOfMemoryError get past compress(); the batch must still complete
+                results[index] = CodecResult.builder()
+                        .setSuccess(false)
+                        .setErrorMessage("Compression failed: " + t)
+                        .build();
+            }
+            if (completedCount.incrementAndGet() == files.size()) {
+                future.complete(new ArrayList<>(Arrays.asList(results)));
+            } else {
+                scheduleNext();
+            }
+        }
+    }
+
+    private static class DefaultExecutorHolder {
+        static final int POOL_SIZE = Math.max(1, Runtime.getRuntime().availableProcessors());
+        static final ExecutorService INSTANCE = Executors.newFixedThreadPool(
+                POOL_SIZE,
+                new ThreadFactory() {
+                    private final AtomicInteger count = new AtomicInteger();
+
+                    @Override
+                    public Thread newThread(Runnable r) {
+                        Thread thread = new Thread(r, "CodecCompressor-" + count.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+    }
+
+    public static <P extends PixelBuffer> Builder<P> builder(ImageCodec<P> codec) {
+        return new Builder<>(codec);
+    }
+
+    public static class Builder<P extends PixelBuffer> {
+        private final ImageCodec<P> codec;
+        private int maxSize = 1024;
+        private int quality = 80;
+        private ImageFormat format = ImageFormat.JPEG;
+        private int maxWidth = 0;
+        private int maxHeight = 0;
+        private boolean fitToMaxSize = false;
+        private int minQuality = 10;
+        private int maxEncodePasses = 8;
+        private boolean downscaleToFit = false;
+        private int maxInFlight;
+        private Executor executor;
+
+        Builder(ImageCodec<P> codec) {
+            this.codec = codec;
+        }
+
+        public Builder<P> setMaxSize(int maxSizeKB) {
+            this.maxSize = maxSizeKB;
+            return this;
+        }
+
+        public Builder<P> setQuality(int quality) {
+            if (quality < 0 || quality > 100) {
+                throw new IllegalArgumentException("Quality must be between 0 and 100");
+            }
+            this.quality = quality;
+            return this;
+        }
+
+        public Builder<P> setFormat(ImageFormat format) {
+            this.format = format;
+            return this;
+        }
+
+        /**
+         * Maximum decoded width in pixels, 0 means unlimited.
+         */
+        public Builder<P> setMaxWidth(int maxWidth) {
+            if (maxWidth < 0) {
+                throw new IllegalArgumentException("Max width must not be negative");
+            }
+            this.maxWidth = maxWidth;
+            return this;
+        }
+
+        /**
+         * Maximum decoded height in pixels, 0 means unlimited.
+         */
+        public Builder<P> setMaxHeight(int maxHeight) {
+            if (maxHeight < 0) {
+                throw new IllegalArgumentException("Max height must not be negative");
+            }
+            this.maxHeight = maxHeight;
+            return this;
+        }
+
+        /**
+         * Binary-search the encode quality between minQuality and quality so the output lands
+         * just under maxSize, instead of encoding once at quality.
+         */
+        public Builder<P> setFitToMaxSize(boolean fitToMaxSize) {
+            this.fitToMaxSize = fitToMaxSize;
+            return this;
+        }
+
+        public Builder<P> setMinQuality(int minQuality) {
+            if (minQuality < 0 || minQuality > 100) {
+                throw new IllegalArgumentException("Min quality must be between 0 and 100");
+            }
+            this.minQuality = minQuality;
+            return this;
+        }
+
+        public Builder<P> setMaxEncodePasses(int maxEncodePasses) {
+            if (maxEncodePasses < 1) {
+                throw new IllegalArgumentException("Max encode passes must be at least 1");
+            }
+            this.maxEncodePasses = maxEncodePasses;
+            return this;
+        }
+
+        /**
+         * When even minQuality is above maxSize, shrink the image and search again.
+         */
+        public Builder<P> setDownscaleToFit(boolean downscaleToFit) {
+            this.downscaleToFit = downscaleToFit;
+            return this;
+        }
+
+        /**
+         * Upper bound on batch items being decoded or encoded at once. Defaults to the CPU core count.
+         */
+        public Builder<P> setMaxInFlight(int maxInFlight) {
+            if (maxInFlight < 1) {
+                throw new IllegalArgumentException("Max in-flight must be at least 1");
+            }
+            this.maxInFlight = maxInFlight;
+            return this;
+        }
+
+        /**
+         * Executor for compressBatch. Defaults to a shared pool with one thread per core.
+         */
+        public Builder<P> setExecutor(Executor executor) {
+            this.executor = executor;
+            return this;
+        }
+
+        public CodecCompressor<P> build() {
+            return new CodecCompressor<>(this);
+        }
+    }
+}
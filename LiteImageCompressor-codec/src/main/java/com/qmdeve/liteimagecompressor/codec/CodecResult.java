@@ -0,0 +1,106 @@
+package com.qmdeve.liteimagecompressor.codec;
+
+/**
+ * Result of a {@link CodecCompressor} run. Compressed output is carried as encoded bytes;
+ * inputs returned unchanged carry no data, or the caller's own array for byte[] inputs.
+ */
+public class CodecResult {
+    private boolean success;
+    private String errorMessage;
+    private long originalSize;
+    private long compressedSize;
+    private boolean wasCompressed;
+    private byte[] data;
+    private ImageFormat format;
+    private int width;
+    private int height;
+
+    private CodecResult(Builder builder) {
+        this.success = builder.success;
+        this.errorMessage = builder.errorMessage;
+        this.originalSize = builder.originalSize;
+        this.compressedSize = builder.compressedSize;
+        this.wasCompressed = builder.wasCompressed;
+        this.data = builder.data;
+        this.format = builder.format;
+        this.width = builder.width;
+        this.height = builder.height;
+    }
+
+    public boolean isSuccess() { return success; }
+    public String getErrorMessage() { return errorMessage; }
+    public long getOriginalSize() { return originalSize; }
+    public long getCompressedSize() { return compressedSize; }
+    public boolean wasCompressed() { return wasCompressed; }
+    public byte[] getData() { return data; }
+    /**
+     * Format of the encoded output, null when the original was returned unchanged.
+     */
+    public ImageFormat getFormat() { return format; }
+    /**
+     * Size of the encoded output in pixels, 0 when the original was returned unchanged.
+     */
+    public int getWidth() { return width; }
+    public int getHeight() { return height; }
+
+    public static class Builder {
+        private boolean success;
+        private String errorMessage;
+        private long originalSize;
+        private long compressedSize;
+        private boolean wasCompressed;
+        private byte[] data;
+        private ImageFormat format;
+        private int width;
+        private int height;
+
+        public Builder setSuccess(boolean success) {
+            this.success = success;
+            return this;
+        }
+
+        public Builder setErrorMessage(String errorMessage) {
+            this.errorMessage = errorMessage;
+            return this;
+        }
+
+        public Builder setOriginalSize(long originalSize) {
+            this.originalSize = originalSize;
+            return this;
+        }
+
+        public Builder setCompressedSize(long compressedSize) {
+            this.compressedSize = compressedSize;
+            return this;
+        }
+
+        public Builder setWasCompressed(boolean wasCompressed) {
+            this.wasCompressed = wasCompressed;
+            return this;
+        }
+
+        public Builder setData(byte[] data) {
+            this.data = data;
+            return this;
+        }
+
+        public Builder setFormat(ImageFormat format) {
+            this.format = format;
+            return this;
+        }
+
+        public Builder setSize(int width, int height) {
+            this.width = width;
+            this.height = height;
+            return this;
+        }
+
+        public CodecResult build() {
+            return new CodecResult(this);
+        }
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+}
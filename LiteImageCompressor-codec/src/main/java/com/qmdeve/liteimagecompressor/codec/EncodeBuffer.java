@@ -0,0 +1,18 @@
+package com.qmdeve.liteimagecompressor.codec;
+
+import java.io.ByteArrayOutputStream;
+
+/**
+ * ByteArrayOutputStream that exposes its backing array, so repeated encodes can reuse
+ * the same storage and callers can read the bytes without a toByteArray() copy.
+ */
+public final class EncodeBuffer extends ByteArrayOutputStream {
+
+    public EncodeBuffer(int initialCapacity) {
+        super(Math.max(32, initialCapacity));
+    }
+
+    public byte[] buffer() {
+        return buf;
+    }
+}
@@ -0,0 +1,9 @@
+package com.qmdeve.liteimagecompressor.codec;
+
+/**
+ * Decoder and encoder for one platform, as needed by {@link CodecCompressor}.
+ * LiteImageCompressor-jvm ships one backed by javax.imageio. The Android library only
+ * implements {@link ImageEncoder}, for {@link TargetSizeSearch}, and decodes on its own.
+ */
+public interface ImageCodec<P extends PixelBuffer> extends ImageDecoder<P>, ImageEncoder<P> {
+}
@@ -0,0 +1,14 @@
+package com.qmdeve.liteimagecompressor.codec;
+
+import java.io.File;
+import java.io.IOException;
+
+public interface ImageDecoder<P extends PixelBuffer> {
+    /**
+     * Decodes {@code file} so it fits within the max dimensions (0 means unlimited), sampling
+     * during the decode where the platform allows. Returns null when the data is not an image.
+     */
+    P decode(File file, int maxWidth, int maxHeight) throws IOException;
+
+    P decode(byte[] data, int length, int maxWidth, int maxHeight) throws IOException;
+}
@@ -0,0 +1,17 @@
+package com.qmdeve.liteimagecompressor.codec;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+public interface ImageEncoder<P extends PixelBuffer> {
+    /**
+     * @param quality 0-100, ignored by formats that are not quality sensitive
+     */
+    void encode(P pixels, ImageFormat format, int quality, OutputStream out) throws IOException;
+
+    /**
+     * Filtered copy of {@code pixels} at the given size, used to shrink images that do not fit
+     * the target at any quality. The source is left untouched.
+     */
+    P scale(P pixels, int width, int height);
+}
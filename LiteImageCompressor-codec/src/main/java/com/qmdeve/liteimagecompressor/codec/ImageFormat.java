@@ -0,0 +1,24 @@
+package com.qmdeve.liteimagecompressor.codec;
+
+/**
+ * Output formats a codec may be asked to encode. Codecs that cannot write one throw an
+ * IOException from {@link ImageEncoder#encode}.
+ */
+public enum ImageFormat {
+    JPEG,
+    PNG,
+    /**
+     * Android's deprecated CompressFormat.WEBP: lossless at quality 100, lossy below.
+     */
+    WEBP,
+    WEBP_LOSSY,
+    WEBP_LOSSLESS;
+
+    /**
+     * Whether the encode quality trades bytes for fidelity. PNG ignores it; for WebP lossless
+     * it is compression effort, where lower values give larger files, so neither is searched.
+     */
+    public boolean isQualitySensitive() {
+        return this != PNG && this != WEBP_LOSSLESS;
+    }
+}
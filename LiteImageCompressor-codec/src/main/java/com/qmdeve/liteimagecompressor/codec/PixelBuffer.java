@@ -0,0 +1,23 @@
+package com.qmdeve.liteimagecompressor.codec;
+
+/**
+ * Decoded pixels as seen by the compression pipeline. Implementations wrap the platform image
+ * type, e.g. an Android Bitmap or a java.awt BufferedImage.
+ */
+public interface PixelBuffer {
+    int getWidth();
+
+    int getHeight();
+
+    boolean hasAlpha();
+
+    /**
+     * Bytes held by the pixels, reported in metrics.
+     */
+    long getAllocationByteCount();
+
+    /**
+     * Frees the pixels; the buffer must not be used afterwards.
+     */
+    void release();
+}
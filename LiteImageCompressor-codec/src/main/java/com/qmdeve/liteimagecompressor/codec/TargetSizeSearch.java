@@ -0,0 +1,234 @@
+package com.qmdeve.liteimagecompressor.codec;
+
+import java.io.IOException;
+
+/**
+ * Encodes pixels so the output lands just under a byte target, using a bounded binary search
+ * over quality and, optionally, progressive downscaling. Codec independent, so the Android
+ * library and LiteImageCompressor-jvm share the same search. One instance per encode.
+ */
+public final class TargetSizeSearch<P extends PixelBuffer> {
+    private static final int DEFAULT_CAPACITY = 64 * 1024;
+    private static final int MAX_DOWNSCALE_ROUNDS = 4;
+    private static final float MIN_DOWNSCALE_FACTOR = 0.5f;
+    private static final float MAX_DOWNSCALE_FACTOR = 0.9f;
+
+    public static final class Outcome {
+        public final EncodeBuffer data;
+        public final int quality;
+        public final int passes;
+        public final int width;
+        public final int height;
+        public final long allocatedBytes;
+
+        Outcome(EncodeBuffer data, int quality, int passes, int width, int height, long allocatedBytes) {
+            this.data = data;
+            this.quality = quality;
+            this.passes = passes;
+            this.width = width;
+            this.height = height;
+            this.allocatedBytes = allocatedBytes;
+        }
+    }
+
+    private final ImageEncoder<P> encoder;
+    private final long targetBytes;
+    private final int minQuality;
+    private final int maxEncodePasses;
+    private final boolean fitToTarget;
+    private final boolean downscaleToFit;
+    private final Runnable checkpoint;
+    private ImageFormat format;
+    private EncodeBuffer best;
+    private EncodeBuffer probe;
+    private int bestQuality = -1;
+    private int passes;
+    private long allocatedBytes;
+
+    private TargetSizeSearch(Builder<P> builder) {
+        this.encoder = builder.encoder;
+        this.targetBytes = builder.targetBytes;
+        this.minQuality = builder.minQuality;
+        this.maxEncodePasses = builder.maxEncodePasses;
+        this.fitToTarget = builder.fitToTarget;
+        this.downscaleToFit = builder.downscaleToFit;
+        this.checkpoint = builder.checkpoint;
+    }
+
+    /**
+     * Encodes at {@code quality}, or with fitToTarget searches down from it. Formats that are
+     * not quality sensitive always encode at 100, the smallest lossless output. Intermediates
+     * made while downscaling are released; {@code pixels} is left untouched.
+     */
+    public Outcome encode(P pixels, ImageFormat format, int quality) throws IOException {
+        this.format = format;
+        if (!format.isQualitySensitive()) {
+            quality = 100;
+        }
+        int capacity = fitToTarget
+                ? (int) Math.min(Integer.MAX_VALUE - 8, Math.max(targetBytes + targetBytes / 8, DEFAULT_CAPACITY))
+                : DEFAULT_CAPACITY;
+        best = new EncodeBuffer(capacity);
+        probe = new EncodeBuffer(capacity);
+
+        if (!fitToTarget) {
+            encodeProbe(pixels, quality);
+            keepProbe(quality);
+            return new Outcome(best, bestQuality, passes, pixels.getWidth(), pixels.getHeight(), bufferBytes());
+        }
+
+        P current = pixels;
+        int rounds = 0;
+        while (true) {
+            bestQuality = -1;
+            int smallestQuality = searchQuality(current, quality);
+            if (bestQuality >= 0) {
+                break;
+            }
+
+            // Nothing fit: the probe buffer holds the smallest encode so far, keep it as a best effort
+            long smallestSize = probe.size();
+            keepProbe(smallestQuality);
+            if (!downscaleToFit || rounds >= MAX_DOWNSCALE_ROUNDS) {
+                break;
+            }
+
+            float factor = (float) Math.sqrt((double) targetBytes / Math.max(1, smallestSize)) * 0.95f;
+            factor = Math.max(MIN_DOWNSCALE_FACTOR, Math.min(MAX_DOWNSCALE_FACTOR, factor));
+            int width = Math.round(current.getWidth() * factor);
+            int height = Math.round(current.getHeight() * factor);
+            if (width < 1 || height < 1) {
+                break;
+            }
+
+            checkpoint.run();
+            P scaled = encoder.scale(current, width, height);
+            allocatedBytes += scaled.getAllocationByteCount();
+            releaseIntermediate(current, pixels);
+            current = scaled;
+            rounds++;
+        }
+
+        Outcome outcome = new Outcome(best, bestQuality, passes, current.getWidth(), current.getHeight(),
+                allocatedBytes + bufferBytes());
+        releaseIntermediate(current, pixels);
+        return outcome;
+    }
+
+    /**
+     * Returns the lowest quality probed; sets bestQuality/best when some quality fits the target.
+     * Failed probes only ever move down, so on a miss the probe buffer holds the smallest encode.
+     */
+    private int searchQuality(P pixels, int quality) throws IOException {
+        int high = quality;
+        int low = Math.min(minQuality, high);
+        int lowestProbed = high;
+
+        encodeProbe(pixels, high);
+        if (probe.size() <= targetBytes) {
+            keepProbe(high);
+            return high;
+        }
+        if (!format.isQualitySensitive()) {
+            return high;
+        }
+
+        int budget = maxEncodePasses - 1;
+        high--;
+        while (low <= high && budget > 0) {
+            int mid = (low + high) >>> 1;
+            encodeProbe(pixels, mid);
+            budget--;
+            lowestProbed = Math.min(lowestProbed, mid);
+            if (probe.size() <= targetBytes) {
+                keepProbe(mid);
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return lowestProbed;
+    }
+
+    private void encodeProbe(P pixels, int quality) throws IOException {
+        checkpoint.run();
+        probe.reset();
+        encoder.encode(pixels, format, quality, probe);
+        passes++;
+    }
+
+    private long bufferBytes() {
+        return (long) best.buffer().length + probe.buffer().length;
+    }
+
+    private void keepProbe(int quality) {
+        EncodeBuffer swap = best;
+        best = probe;
+        probe = swap;
+        bestQuality = quality;
+    }
+
+    private void releaseIntermediate(P current, P original) {
+        if (current != original) {
+            current.release();
+        }
+    }
+
+    public static <P extends PixelBuffer> Builder<P> builder(ImageEncoder<P> encoder) {
+        return new Builder<>(encoder);
+    }
+
+    public static class Builder<P extends PixelBuffer> {
+        private final ImageEncoder<P> encoder;
+        private long targetBytes = 1024 * 1024;
+        private int minQuality = 10;
+        private int maxEncodePasses = 8;
+        private boolean fitToTarget = false;
+        private boolean downscaleToFit = false;
+        private Runnable checkpoint = () -> { };
+
+        Builder(ImageEncoder<P> encoder) {
+            this.encoder = encoder;
+        }
+
+        public Builder<P> setTargetBytes(long targetBytes) {
+            this.targetBytes = targetBytes;
+            return this;
+        }
+
+        public Builder<P> setMinQuality(int minQuality) {
+            this.minQuality = minQuality;
+            return this;
+        }
+
+        /**
+         * Upper bound on encodes per quality search, including the first encode at quality.
+         */
+        public Builder<P> setMaxEncodePasses(int maxEncodePasses) {
+            this.maxEncodePasses = maxEncodePasses;
+            return this;
+        }
+
+        public Builder<P> setFitToTarget(boolean fitToTarget) {
+            this.fitToTarget = fitToTarget;
+            return this;
+        }
+
+        public Builder<P> setDownscaleToFit(boolean downscaleToFit) {
+            this.downscaleToFit = downscaleToFit;
+            return this;
+        }
+
+        /**
+         * Run before every encode and rescale, e.g. to throw when the caller cancelled.
+         */
+        public Builder<P> setCheckpoint(Runnable checkpoint) {
+            this.checkpoint = checkpoint;
+            return this;
+        }
+
+        public TargetSizeSearch<P> build() {
+            return new TargetSizeSearch<>(this);
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package com.qmdeve.liteimagecompressor.codec;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+public class CodecCompressorTest {
+    // 100 x 100 pixels at quality 80 encode to 8000 bytes
+    private final FakeCodec codec = new FakeCodec();
+
+    @Test
+    public void underThresholdFileIsNotDecoded() throws IOException {
+        File file = tempFile(2048);
+        try {
+            CodecResult result = CodecCompressor.builder(codec).setMaxSize(2).build().compress(file);
+
+            assertTrue(result.isSuccess());
+            assertFalse(result.wasCompressed());
+            assertNull(result.getData());
+            assertEquals(2048, result.getCompressedSize());
+            assertEquals(0, codec.decodes.get());
+        } finally {
+            assertTrue(file.delete());
+        }
+    }
+
+    @Test
+    public void underThresholdBytesAreReturnedAsGiven() {
+        byte[] data = new byte[1024];
+        CodecResult result = CodecCompressor.builder(codec).setMaxSize(1).build().compress(data);
+
+        assertTrue(result.isSuccess());
+        assertFalse(result.wasCompressed());
+        assertTrue(result.getData() == data);
+        assertEquals(0, codec.decodes.get());
+    }
+
+    @Test
+    public void overThresholdIsEncodedAndPixelsReleased() {
+        CodecResult result = CodecCompressor.builder(codec).setMaxSize(10).setQuality(80).build()
+                .compress(new byte[20 * 1024]);
+
+        assertTrue(result.isSuccess());
+        assertTrue(result.wasCompressed());
+        assertEquals(8000, result.getCompressedSize());
+        assertEquals(8000, result.getData().length);
+        assertEquals(ImageFormat.JPEG, result.getFormat());
+        assertEquals(100, result.getWidth());
+        assertEquals(0, codec.live.get());
+    }
+
+    @Test
+    public void largerEncodeReturnsTheOriginal() {
+        byte[] data = new byte[4096];
+        CodecResult result = CodecCompressor.builder(codec).setMaxSize(1).setQuality(80).build().compress(data);
+
+        assertTrue(result.isSuccess());
+        assertFalse(result.wasCompressed());
+        assertEquals(4096, result.getCompressedSize());
+        assertEquals("Compressed image is larger than original, return original", result.getErrorMessage());
+        assertEquals(0, codec.live.get());
+    }
+
+    @Test
+    public void failedDecodeAndMissingInputsAreErrors() {
+        codec.decodeFails = true;
+        CodecCompressor<FakeCodec.Pixels> compressor = CodecCompressor.builder(codec).setMaxSize(1).build();
+
+        assertEquals("Failed to load original bitmap", compressor.compress(new byte[4096]).getErrorMessage());
+        assertEquals("File does not exist", compressor.compress(new File("missing.jpg")).getErrorMessage());
+        assertEquals("Data is null", compressor.compress((byte[]) null).getErrorMessage());
+    }
+
+    @Test
+    public void batchKeepsOrderAndStaysWithinMaxInFlight() throws IOException {
+        codec.encodeDelayMillis = 5;
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<File> files = new ArrayList<>();
+        try {
+            for (int i = 0; i < 12; i++) {
+                files.add(tempFile((20 + i) * 1024));
+            }
+            List<CodecResult> results = CodecCompressor.builder(codec)
+                    .setMaxSize(10)
+                    .setMaxInFlight(2)
+                    .setExecutor(executor)
+                    .build()
+                    .compressBatch(files);
+
+            assertEquals(files.size(), results.size());
+            for (int i = 0; i < files.size(); i++) {
+                assertTrue(results.get(i).wasCompressed());
+                assertEquals((20 + i) * 1024, results.get(i).getOriginalSize());
+            }
+            assertEquals(files.size(), codec.decodes.get());
+            assertTrue(codec.peakLive.get() <= 2);
+            assertTrue(CodecCompressor.builder(codec).build().compressBatch(new ArrayList<>()).isEmpty());
+        } finally {
+            executor.shutdown();
+            for (File file : files) {
+                assertTrue(file.delete());
+            }
+        }
+    }
+
+    private static File tempFile(int size) throws IOException {
+        File file = File.createTempFile("codec", ".jpg");
+        try (OutputStream out = new FileOutputStream(file)) {
+            out.write(new byte[size]);
+        }
+        return file;
+    }
+}
@@ -0,0 +1,108 @@
+package com.qmdeve.liteimagecompressor.codec;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Codec whose encodes are {@code width * height * quality / 100} zero bytes, or
+ * {@code width * height} for formats that ignore quality, so tests can predict every size.
+ * Decodes return {@link #decodeWidth} x {@link #decodeHeight} pixels and count how many are
+ * alive at once.
+ */
+class FakeCodec implements ImageCodec<FakeCodec.Pixels> {
+    final AtomicInteger decodes = new AtomicInteger();
+    final AtomicInteger live = new AtomicInteger();
+    final AtomicInteger peakLive = new AtomicInteger();
+    int decodeWidth = 100;
+    int decodeHeight = 100;
+    boolean decodeFails;
+    long encodeDelayMillis;
+
+    @Override
+    public Pixels decode(File file, int maxWidth, int maxHeight) {
+        return decodePixels();
+    }
+
+    @Override
+    public Pixels decode(byte[] data, int length, int maxWidth, int maxHeight) {
+        return decodePixels();
+    }
+
+    @Override
+    public void encode(Pixels pixels, ImageFormat format, int quality, OutputStream out) throws IOException {
+        if (pixels.released) {
+            throw new IOException("Encoding released pixels");
+        }
+        if (encodeDelayMillis > 0) {
+            try {
+                Thread.sleep(encodeDelayMillis);
+            } catch (InterruptedException e) {
+                throw new IOException(e);
+            }
+        }
+        out.write(new byte[sizeOf(pixels.width, pixels.height, format, quality)]);
+    }
+
+    @Override
+    public Pixels scale(Pixels pixels, int width, int height) {
+        return new Pixels(width, height);
+    }
+
+    static int sizeOf(int width, int height, ImageFormat format, int quality) {
+        int pixels = width * height;
+        return Math.max(1, format.isQualitySensitive() ? pixels * quality / 100 : pixels);
+    }
+
+    private Pixels decodePixels() {
+        decodes.incrementAndGet();
+        if (decodeFails) {
+            return null;
+        }
+        Pixels pixels = new Pixels(decodeWidth, decodeHeight);
+        pixels.tracked = this;
+        peakLive.accumulateAndGet(live.incrementAndGet(), Math::max);
+        return pixels;
+    }
+
+    static class Pixels implements PixelBuffer {
+        final int width;
+        final int height;
+        boolean released;
+        private FakeCodec tracked;
+
+        Pixels(int width, int height) {
+            this.width = width;
+            this.height = height;
+        }
+
+        @Override
+        public int getWidth() {
+            return width;
+        }
+
+        @Override
+        public int getHeight() {
+            return height;
+        }
+
+        @Override
+        public boolean hasAlpha() {
+            return false;
+        }
+
+        @Override
+        public long getAllocationByteCount() {
+            return (long) width * height * 4;
+        }
+
+        @Override
+        public void release() {
+            released = true;
+            if (tracked != null) {
+                tracked.live.decrementAndGet();
+            }
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package com.qmdeve.liteimagecompressor.codec;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class TargetSizeSearchTest {
+    // 100 x 100 pixels, so an encode at quality q is 100 * q bytes
+    private final FakeCodec codec = new FakeCodec();
+    private final FakeCodec.Pixels pixels = new FakeCodec.Pixels(100, 100);
+
+    @Test
+    public void encodesOnceAtQualityWithoutFitToTarget() throws IOException {
+        TargetSizeSearch.Outcome outcome = TargetSizeSearch.builder(codec)
+                .setTargetBytes(100)
+                .build()
+                .encode(pixels, ImageFormat.JPEG, 80);
+
+        assertEquals(80, outcome.quality);
+        assertEquals(1, outcome.passes);
+        assertEquals(8000, outcome.data.size());
+        assertEquals(100, outcome.width);
+    }
+
+    @Test
+    public void fitToTargetFindsHighestQualityUnderTarget() throws IOException {
+        TargetSizeSearch.Outcome outcome = TargetSizeSearch.builder(codec)
+                .setTargetBytes(5050)
+                .setMinQuality(10)
+                .setMaxEncodePasses(10)
+                .setFitToTarget(true)
+                .build()
+                .encode(pixels, ImageFormat.JPEG, 90);
+
+        assertEquals(50, outcome.quality);
+        assertEquals(5000, outcome.data.size());
+        assertTrue(outcome.passes <= 10);
+    }
+
+    @Test
+    public void firstEncodeThatFitsEndsTheSearch() throws IOException {
+        TargetSizeSearch.Outcome outcome = TargetSizeSearch.builder(codec)
+                .setTargetBytes(9000)
+                .setFitToTarget(true)
+                .build()
+                .encode(pixels, ImageFormat.JPEG, 80);
+
+        assertEquals(80, outcome.quality);
+        assertEquals(1, outcome.passes);
+    }
+
+    @Test
+    public void searchStopsAtMaxEncodePasses() throws IOException {
+        TargetSizeSearch.Outcome outcome = TargetSizeSearch.builder(codec)
+                .setTargetBytes(5050)
+                .setMinQuality(10)
+                .setMaxEncodePasses(3)
+                .setFitToTarget(true)
+                .build()
+                .encode(pixels, ImageFormat.JPEG, 90);
+
+        assertEquals(3, outcome.passes);
+        assertTrue(outcome.quality <= 50);
+        assertTrue(outcome.data.size() <= 5050);
+    }
+
+    @Test
+    public void missKeepsTheMinQualityEncode() throws IOException {
+        TargetSizeSearch.Outcome outcome = TargetSizeSearch.builder(codec)
+                .setTargetBytes(100)
+                .setMinQuality(20)
+                .setMaxEncodePasses(10)
+                .setFitToTarget(true)
+                .build()
+                .encode(pixels, ImageFormat.JPEG, 80);
+
+        assertEquals(20, outcome.quality);
+        assertEquals(2000, outcome.data.size());
+        assertEquals(100, outcome.width);
+    }
+
+    @Test
+    public void losslessFormatsEncodeOnceAt100() throws IOException {
+        TargetSizeSearch.Outcome outcome = TargetSizeSearch.builder(codec)
+                .setTargetBytes(100)
+                .setFitToTarget(true)
+                .build()
+                .encode(pixels, ImageFormat.PNG, 60);
+
+        assertEquals(100, outcome.quality);
+        assertEquals(1, outcome.passes);
+    }
+
+    @Test
+    public void downscaleShrinksUntilMinQualityFits() throws IOException {
+        AtomicInteger checkpoints = new AtomicInteger();
+        TargetSizeSearch.Outcome outcome = TargetSizeSearch.builder(new FakeCodec() {
+                    @Override
+                    public FakeCodec.Pixels scale(FakeCodec.Pixels source, int width, int height) {
+                        assertFalse(source.released);
+                        return super.scale(source, width, height);
+                    }
+                })
+                .setTargetBytes(500)
+                .setMinQuality(10)
+                .setFitToTarget(true)
+                .setDownscaleToFit(true)
+                .setCheckpoint(checkpoints::incrementAndGet)
+                .build()
+                .encode(pixels, ImageFormat.JPEG, 80);
+
+        assertTrue(outcome.width < 100);
+        assertTrue(outcome.data.size() <= 500);
+        assertEquals(FakeCodec.sizeOf(outcome.width, outcome.height, ImageFormat.JPEG, outcome.quality),
+                outcome.data.size());
+        assertFalse(pixels.released);
+        // One checkpoint before every encode and every rescale
+        assertTrue(checkpoints.get() > outcome.passes);
+    }
+
+    @Test
+    public void downscaleGivesUpAfterFourRounds() throws IOException {
+        TargetSizeSearch.Outcome outcome = TargetSizeSearch.builder(codec)
+                .setTargetBytes(1)
+                .setMinQuality(10)
+                .setFitToTarget(true)
+                .setDownscaleToFit(true)
+                .build()
+                .encode(pixels, ImageFormat.JPEG, 80);
+
+        // Each round shrinks by at most half
+        assertTrue(outcome.width >= 100 / 16);
+        assertTrue(outcome.data.size() > 1);
+    }
+}
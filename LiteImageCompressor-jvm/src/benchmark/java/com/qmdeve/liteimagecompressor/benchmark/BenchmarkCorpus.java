@@ -0,0 +1,92 @@
+package com.qmdeve.liteimagecompressor.benchmark;
+
+import com.qmdeve.liteimagecompressor.codec.ImageFormat;
+import com.qmdeve.liteimagecompressor.jvm.BufferedImagePixels;
+import com.qmdeve.liteimagecompressor.jvm.ImageIoCodec;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * The synthetic corpus of the androidx.benchmark module, generated the same way on the JVM:
+ * smooth gradients, hard edges and low-amplitude noise from a fixed seed, so results are
+ * comparable across releases.
+ */
+final class BenchmarkCorpus {
+    private static final long SEED = 0x5EEDL;
+    private static final int SOURCE_QUALITY = 95;
+
+    enum ImageSize {
+        SMALL(800, 600),
+        MEDIUM(2000, 1500),
+        LARGE(4000, 3000);
+
+        final int width;
+        final int height;
+
+        ImageSize(int width, int height) {
+            this.width = width;
+            this.height = height;
+        }
+    }
+
+    private BenchmarkCorpus() {
+    }
+
+    static BufferedImage createImage(ImageSize size) {
+        BufferedImage image = new BufferedImage(size.width, size.height, BufferedImage.TYPE_INT_RGB);
+        Random random = new Random(SEED);
+        int[] row = new int[size.width];
+        int blockSize = Math.max(16, size.width / 12);
+        for (int y = 0; y < size.height; y++) {
+            for (int x = 0; x < size.width; x++) {
+                int noise = random.nextInt(17) - 8;
+                boolean edge = ((x / blockSize) + (y / blockSize)) % 5 == 0;
+                int r = clamp(x * 255 / size.width + noise + (edge ? 60 : 0));
+                int g = clamp(y * 255 / size.height + noise);
+                int b = clamp((x + y) * 255 / (size.width + size.height) + noise - (edge ? 60 : 0));
+                row[x] = (r << 16) | (g << 8) | b;
+            }
+            image.setRGB(0, y, size.width, 1, row, 0, size.width);
+        }
+        return image;
+    }
+
+    /**
+     * Returns the corpus file for the size and format in {@code dir}, encoding it on first use.
+     */
+    static File getFile(File dir, ImageSize size, ImageFormat format) throws IOException {
+        if (!dir.exists() && !dir.mkdirs()) {
+            throw new IOException("Cannot create " + dir);
+        }
+        File file = new File(dir, size.name().toLowerCase(Locale.US) + "." + extension(format));
+        if (file.length() > 0) {
+            return file;
+        }
+
+        try (OutputStream out = new FileOutputStream(file)) {
+            new ImageIoCodec().encode(new BufferedImagePixels(createImage(size)), format, SOURCE_QUALITY, out);
+        }
+        return file;
+    }
+
+    private static String extension(ImageFormat format) {
+        switch (format) {
+            case PNG:
+                return "png";
+            case JPEG:
+                return "jpg";
+            default:
+                return "webp";
+        }
+    }
+
+    private static int clamp(int value) {
+        return Math.max(0, Math.min(255, value));
+    }
+}
@@ -0,0 +1,236 @@
+package com.qmdeve.liteimagecompressor.benchmark;
+
+import com.qmdeve.liteimagecompressor.codec.CodecCompressor;
+import com.qmdeve.liteimagecompressor.codec.CodecResult;
+import com.qmdeve.liteimagecompressor.codec.ImageFormat;
+import com.qmdeve.liteimagecompressor.codec.TargetSizeSearch;
+import com.qmdeve.liteimagecompressor.jvm.BufferedImagePixels;
+import com.qmdeve.liteimagecompressor.jvm.ImageIoCodec;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+
+/**
+ * JVM counterpart of the androidx.benchmark module. It measures {@link CodecCompressor} on
+ * {@link ImageIoCodec}, not LiteImageCompressor itself, so CI can gate regressions in the
+ * shared quality search and the codec pipeline without a device. Each corpus source (3 sizes x
+ * JPEG/PNG) is compressed to JPEG with maxSize at half its size, so every row does real work:
+ * <ul>
+ *     <li>codecCompressFile: CodecCompressor.compress(File), decode + search + encode</li>
+ *     <li>codecCompressBytes: CodecCompressor.compress(byte[]) on the file contents</li>
+ *     <li>targetSizeSearch: the fitToMaxSize search alone on already decoded pixels</li>
+ * </ul>
+ * and reports p50/p90/p99 latency, bytes allocated per operation, peak heap and output ratio.
+ * <p>
+ * Arguments: {@code [--report file] [--baseline file] [--tolerance fraction]}. The report is
+ * a properties file; given a baseline in the same format, the run fails when any p50 latency
+ * or allocation figure grows by more than the tolerance (default 0.2).
+ * Run with {@code ./gradlew :LiteImageCompressor-jvm:benchmark}.
+ */
+public final class CodecBenchmark {
+    private static final int QUALITY = 80;
+    private static final ImageFormat OUTPUT_FORMAT = ImageFormat.JPEG;
+    private static final int WARMUP = 1;
+    private static final int ITERATIONS = 20;
+    private static final double DEFAULT_TOLERANCE = 0.2;
+    private static final ImageFormat[] FORMATS = {ImageFormat.JPEG, ImageFormat.PNG};
+
+    interface Operation {
+        long[] run() throws Exception;
+    }
+
+    private final Map<String, Number> report = new TreeMap<>();
+
+    public static void main(String[] args) throws Exception {
+        File reportFile = null;
+        File baselineFile = null;
+        double tolerance = DEFAULT_TOLERANCE;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--report":
+                    reportFile = new File(args[++i]);
+                    break;
+                case "--baseline":
+                    baselineFile = new File(args[++i]);
+                    break;
+                case "--tolerance":
+                    tolerance = Double.parseDouble(args[++i]);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown argument: " + args[i]);
+            }
+        }
+
+        CodecBenchmark benchmark = new CodecBenchmark();
+        benchmark.runAll(Files.createTempDirectory("codec-benchmark").toFile());
+        if (reportFile != null) {
+            benchmark.write(reportFile);
+        }
+        if (baselineFile != null && !benchmark.compare(baselineFile, tolerance)) {
+            System.exit(1);
+        }
+    }
+
+    private void runAll(File corpusDir) throws Exception {
+        ImageIoCodec codec = new ImageIoCodec();
+        for (BenchmarkCorpus.ImageSize size : BenchmarkCorpus.ImageSize.values()) {
+            for (ImageFormat format : FORMATS) {
+                File file = BenchmarkCorpus.getFile(corpusDir, size, format);
+                byte[] data = Files.readAllBytes(file.toPath());
+                // Half the source size keeps every row above the threshold
+                int maxSizeKb = Math.max(1, data.length / 1024 / 2);
+                CodecCompressor<BufferedImagePixels> compressor = ImageIoCodec.compressor()
+                        .setMaxSize(maxSizeKb)
+                        .setQuality(QUALITY)
+                        .setFormat(OUTPUT_FORMAT)
+                        .build();
+                String suffix = "_" + size + "_" + format;
+
+                profile("codecCompressFile" + suffix, () -> sizes(compressor.compress(file)));
+                profile("codecCompressBytes" + suffix, () -> sizes(compressor.compress(data)));
+
+                BufferedImagePixels pixels = codec.decode(file, 0, 0);
+                profile("targetSizeSearch" + suffix, () -> {
+                    TargetSizeSearch.Outcome outcome = TargetSizeSearch.builder(codec)
+                            .setTargetBytes((long) maxSizeKb * 1024)
+                            .setFitToTarget(true)
+                            .build()
+                            .encode(pixels, OUTPUT_FORMAT, QUALITY);
+                    return new long[]{data.length, outcome.data.size()};
+                });
+            }
+        }
+    }
+
+    /**
+     * Warms up, then times ITERATIONS runs on this thread. Allocation is the thread's own,
+     * peak heap is the highest heap-pool usage seen since the last reset.
+     */
+    private void profile(String name, Operation operation) throws Exception {
+        for (int i = 0; i < WARMUP; i++) {
+            operation.run();
+        }
+        System.gc();
+        resetPeakHeap();
+
+        long[] latencies = new long[ITERATIONS];
+        long[] sizes = null;
+        long allocatedBefore = threadAllocatedBytes();
+        for (int i = 0; i < ITERATIONS; i++) {
+            long start = System.nanoTime();
+            sizes = operation.run();
+            latencies[i] = System.nanoTime() - start;
+        }
+        long allocatedPerOp = (threadAllocatedBytes() - allocatedBefore) / ITERATIONS;
+        long peakHeap = peakHeap();
+        double ratio = sizes[0] > 0 ? (double) sizes[1] / sizes[0] : 0;
+
+        Arrays.sort(latencies);
+        report.put(name + "_p50_ns", percentile(latencies, 50));
+        report.put(name + "_p90_ns", percentile(latencies, 90));
+        report.put(name + "_p99_ns", percentile(latencies, 99));
+        report.put(name + "_alloc_bytes_per_op", allocatedPerOp);
+        report.put(name + "_peak_heap_bytes", peakHeap);
+        report.put(name + "_output_ratio", ratio);
+        System.out.println(String.format(Locale.US,
+                "%s p50=%.2fms p90=%.2fms p99=%.2fms alloc/op=%dKB peakHeap=%dKB ratio=%.3f",
+                name,
+                percentile(latencies, 50) / 1e6,
+                percentile(latencies, 90) / 1e6,
+                percentile(latencies, 99) / 1e6,
+                allocatedPerOp / 1024,
+                peakHeap / 1024,
+                ratio));
+    }
+
+    private void write(File file) throws IOException {
+        Properties properties = new Properties();
+        for (Map.Entry<String, Number> entry : report.entrySet()) {
+            properties.setProperty(entry.getKey(), String.valueOf(entry.getValue()));
+        }
+        try (OutputStream out = new FileOutputStream(file)) {
+            properties.store(out, "CodecBenchmark");
+        }
+    }
+
+    /**
+     * Prints every gated figure that grew past the tolerance; false when there was any.
+     * Figures missing from the baseline are new and not gated.
+     */
+    private boolean compare(File baselineFile, double tolerance) throws IOException {
+        Properties baseline = new Properties();
+        try (InputStream in = new FileInputStream(baselineFile)) {
+            baseline.load(in);
+        }
+        boolean passed = true;
+        for (Map.Entry<String, Number> entry : report.entrySet()) {
+            String key = entry.getKey();
+            String previous = baseline.getProperty(key);
+            if (previous == null || !(key.endsWith("_p50_ns") || key.endsWith("_alloc_bytes_per_op"))) {
+                continue;
+            }
+            double limit = Double.parseDouble(previous) * (1 + tolerance);
+            if (entry.getValue().doubleValue() > limit) {
+                System.out.println(String.format(Locale.US, "REGRESSION %s: %s > %s (+%.0f%% allowed)",
+                        key, entry.getValue(), previous, tolerance * 100));
+                passed = false;
+            }
+        }
+        return passed;
+    }
+
+    /**
+     * Original and output size; a row that fell back to the original measures nothing, so it
+     * fails the run.
+     */
+    private static long[] sizes(CodecResult result) {
+        if (!result.isSuccess() || !result.wasCompressed()) {
+            throw new IllegalStateException("No compression: " + result.getErrorMessage());
+        }
+        return new long[]{result.getOriginalSize(), result.getCompressedSize()};
+    }
+
+    private static long percentile(long[] sorted, int percent) {
+        int index = (int) Math.ceil(percent / 100.0 * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(sorted.length - 1, index))];
+    }
+
+    private static long threadAllocatedBytes() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return 0;
+    }
+
+    private static void resetPeakHeap() {
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                pool.resetPeakUsage();
+            }
+        }
+    }
+
+    private static long peakHeap() {
+        long peak = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                peak += pool.getPeakUsage().getUsed();
+            }
+        }
+        return peak;
+    }
+}
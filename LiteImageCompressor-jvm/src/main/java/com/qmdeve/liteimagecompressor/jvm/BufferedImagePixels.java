@@ -0,0 +1,47 @@
+package com.qmdeve.liteimagecompressor.jvm;
+
+import com.qmdeve.liteimagecompressor.codec.PixelBuffer;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+
+public final class BufferedImagePixels implements PixelBuffer {
+    private BufferedImage image;
+
+    public BufferedImagePixels(BufferedImage image) {
+        this.image = image;
+    }
+
+    public BufferedImage getImage() {
+        return image;
+    }
+
+    @Override
+    public int getWidth() {
+        return image.getWidth();
+    }
+
+    @Override
+    public int getHeight() {
+        return image.getHeight();
+    }
+
+    @Override
+    public boolean hasAlpha() {
+        return image.getColorModel().hasAlpha();
+    }
+
+    @Override
+    public long getAllocationByteCount() {
+        DataBuffer buffer = image.getRaster().getDataBuffer();
+        return (long) buffer.getSize() * buffer.getNumBanks() * DataBuffer.getDataTypeSize(buffer.getDataType()) / 8;
+    }
+
+    /**
+     * Drops the reference so the pixels can be collected; there is no native memory to free.
+     */
+    @Override
+    public void release() {
+        image = null;
+    }
+}
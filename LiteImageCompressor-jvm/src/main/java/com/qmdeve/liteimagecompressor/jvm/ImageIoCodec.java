@@ -0,0 +1,194 @@
+package com.qmdeve.liteimagecompressor.jvm;
+
+import com.qmdeve.liteimagecompressor.codec.CodecCompressor;
+import com.qmdeve.liteimagecompressor.codec.ImageCodec;
+import com.qmdeve.liteimagecompressor.codec.ImageFormat;
+
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Iterator;
+import java.util.Locale;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+
+/**
+ * {@link ImageCodec} on javax.imageio, so {@link CodecCompressor} runs on a plain JVM. Decodes
+ * with source subsampling the way BitmapFactory uses inSampleSize. The JDK reads and writes
+ * JPEG and PNG; WebP needs an ImageIO plugin on the classpath, and EXIF orientation is not
+ * applied.
+ */
+public class ImageIoCodec implements ImageCodec<BufferedImagePixels> {
+
+    /**
+     * Compressor builder preset with this codec.
+     */
+    public static CodecCompressor.Builder<BufferedImagePixels> compressor() {
+        return CodecCompressor.builder(new ImageIoCodec());
+    }
+
+    @Override
+    public BufferedImagePixels decode(File file, int maxWidth, int maxHeight) throws IOException {
+        try (ImageInputStream in = ImageIO.createImageInputStream(file)) {
+            return decode(in, maxWidth, maxHeight);
+        }
+    }
+
+    @Override
+    public BufferedImagePixels decode(byte[] data, int length, int maxWidth, int maxHeight) throws IOException {
+        try (ImageInputStream in = ImageIO.createImageInputStream(new ByteArrayInputStream(data, 0, length))) {
+            return decode(in, maxWidth, maxHeight);
+        }
+    }
+
+    @Override
+    public void encode(BufferedImagePixels pixels, ImageFormat format, int quality, OutputStream out)
+            throws IOException {
+        BufferedImage image = pixels.getImage();
+        if (format == ImageFormat.JPEG && image.getColorModel().hasAlpha()) {
+            // JPEG has no alpha channel; drop it like Bitmap.compress does
+            image = convert(image, BufferedImage.TYPE_INT_RGB);
+        }
+
+        ImageWriter writer = writerFor(format);
+        try (ImageOutputStream stream = ImageIO.createImageOutputStream(out)) {
+            writer.setOutput(stream);
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            if (format != ImageFormat.PNG && param.canWriteCompressed()) {
+                param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+                selectCompressionType(param, format, quality);
+                param.setCompressionQuality(quality / 100f);
+            }
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+    }
+
+    @Override
+    public BufferedImagePixels scale(BufferedImagePixels pixels, int width, int height) {
+        BufferedImage source = pixels.getImage();
+        BufferedImage scaled = new BufferedImage(width, height, source.getColorModel().hasAlpha()
+                ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = scaled.createGraphics();
+        try {
+            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            graphics.drawImage(source, 0, 0, width, height, null);
+        } finally {
+            graphics.dispose();
+        }
+        return new BufferedImagePixels(scaled);
+    }
+
+    private BufferedImagePixels decode(ImageInputStream in, int maxWidth, int maxHeight) throws IOException {
+        if (in == null) {
+            return null;
+        }
+        Iterator<ImageReader> readers = ImageIO.getImageReaders(in);
+        if (!readers.hasNext()) {
+            return null;
+        }
+
+        ImageReader reader = readers.next();
+        try {
+            reader.setInput(in, true, true);
+            int width = reader.getWidth(0);
+            int height = reader.getHeight(0);
+            int sampleSize = sampleSize(width, height, maxWidth, maxHeight);
+            ImageReadParam param = reader.getDefaultReadParam();
+            if (sampleSize > 1) {
+                param.setSourceSubsampling(sampleSize, sampleSize, 0, 0);
+            }
+            BufferedImagePixels pixels = new BufferedImagePixels(reader.read(0, param));
+            return scaleToFit(pixels, maxWidth, maxHeight);
+        } finally {
+            reader.dispose();
+        }
+    }
+
+    private BufferedImagePixels scaleToFit(BufferedImagePixels pixels, int maxWidth, int maxHeight) {
+        float scale = 1f;
+        if (maxWidth > 0 && pixels.getWidth() > maxWidth) {
+            scale = Math.min(scale, (float) maxWidth / pixels.getWidth());
+        }
+        if (maxHeight > 0 && pixels.getHeight() > maxHeight) {
+            scale = Math.min(scale, (float) maxHeight / pixels.getHeight());
+        }
+        if (scale >= 1f) {
+            return pixels;
+        }
+        BufferedImagePixels scaled = scale(pixels, Math.max(1, Math.round(pixels.getWidth() * scale)),
+                Math.max(1, Math.round(pixels.getHeight() * scale)));
+        pixels.release();
+        return scaled;
+    }
+
+    /**
+     * Largest power of two that keeps the subsampled image at or above the requested bounds,
+     * matching the Android decoder's inSampleSize. An unset (0) bound leaves its side
+     * unconstrained.
+     */
+    private static int sampleSize(int width, int height, int maxWidth, int maxHeight) {
+        if (maxWidth <= 0 && maxHeight <= 0) {
+            return 1;
+        }
+        int sampleSize = 1;
+        while ((maxWidth <= 0 || width / (sampleSize * 2) >= maxWidth)
+                && (maxHeight <= 0 || height / (sampleSize * 2) >= maxHeight)) {
+            sampleSize *= 2;
+        }
+        return sampleSize;
+    }
+
+    private static ImageWriter writerFor(ImageFormat format) throws IOException {
+        String name = format == ImageFormat.JPEG ? "jpeg" : format == ImageFormat.PNG ? "png" : "webp";
+        Iterator<ImageWriter> writers = ImageIO.getImageWritersByFormatName(name);
+        if (!writers.hasNext()) {
+            throw new IOException("No ImageIO writer for " + format);
+        }
+        return writers.next();
+    }
+
+    /**
+     * WebP plugins expose lossy and lossless as compression types; pick the matching one.
+     * Plain WEBP is lossless only at quality 100, as on Android.
+     */
+    private static void selectCompressionType(ImageWriteParam param, ImageFormat format, int quality) {
+        String[] types = param.getCompressionTypes();
+        if (types == null || types.length == 0) {
+            return;
+        }
+        boolean lossless = format == ImageFormat.WEBP_LOSSLESS || (format == ImageFormat.WEBP && quality == 100);
+        String wanted = lossless ? "lossless" : "lossy";
+        for (String type : types) {
+            if (type.toLowerCase(Locale.ROOT).contains(wanted)) {
+                param.setCompressionType(type);
+                return;
+            }
+        }
+        param.setCompressionType(types[0]);
+    }
+
+    private static BufferedImage convert(BufferedImage image, int type) {
+        BufferedImage converted = new BufferedImage(image.getWidth(), image.getHeight(), type);
+        Graphics2D graphics = converted.createGraphics();
+        try {
+            graphics.drawImage(image, 0, 0, null);
+        } finally {
+            graphics.dispose();
+        }
+        return converted;
+    }
+}
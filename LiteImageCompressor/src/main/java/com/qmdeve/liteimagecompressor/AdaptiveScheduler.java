@@ -0,0 +1,92 @@
+package com.qmdeve.liteimagecompressor;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.Executor;
+
+/**
+ * Executor wrapper that admits fewer tasks at once as memory pressure rises, down to one,
+ * and tells the decoder to sample harder. The pressure is re-read whenever a task is queued
+ * or finishes, so concurrency recovers as soon as memory is freed.
+ */
+final class AdaptiveScheduler implements Executor {
+    static final float LOW_PRESSURE = 0.5f;
+    static final float HIGH_PRESSURE = 0.9f;
+    static final float DOWNSAMPLE_PRESSURE = 0.75f;
+
+    private final Executor delegate;
+    private final MemoryPressureSource pressureSource;
+    private final int maxConcurrency;
+    private final ArrayDeque<Runnable> queue = new ArrayDeque<>();
+    private int running;
+    private volatile int concurrency;
+
+    AdaptiveScheduler(Executor delegate, MemoryPressureSource pressureSource, int maxConcurrency) {
+        this.delegate = delegate;
+        this.pressureSource = pressureSource;
+        this.maxConcurrency = maxConcurrency;
+        this.concurrency = maxConcurrency;
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        synchronized (this) {
+            queue.add(task);
+        }
+        schedule();
+    }
+
+    int getConcurrency() {
+        return concurrency;
+    }
+
+    /**
+     * Extra power-of-two factor applied on top of the configured inSampleSize.
+     */
+    int sampleFactor() {
+        float pressure = pressureSource.getPressure();
+        if (pressure >= HIGH_PRESSURE) {
+            return 4;
+        }
+        return pressure >= DOWNSAMPLE_PRESSURE ? 2 : 1;
+    }
+
+    /**
+     * Full concurrency up to LOW_PRESSURE, falling linearly to one task at HIGH_PRESSURE.
+     */
+    static int concurrencyFor(float pressure, int maxConcurrency) {
+        float load = (pressure - LOW_PRESSURE) / (HIGH_PRESSURE - LOW_PRESSURE);
+        load = Math.max(0f, Math.min(1f, load));
+        return Math.max(1, Math.round(maxConcurrency * (1f - load)));
+    }
+
+    private void schedule() {
+        while (true) {
+            Runnable task;
+            synchronized (this) {
+                concurrency = concurrencyFor(pressureSource.getPressure(), maxConcurrency);
+                if (running >= concurrency || queue.isEmpty()) {
+                    return;
+                }
+                task = queue.poll();
+                running++;
+            }
+            try {
+                delegate.execute(() -> {
+                    try {
+                        task.run();
+                    } finally {
+                        synchronized (this) {
+                            running--;
+                        }
+                        schedule();
+                    }
+                });
+            } catch (RuntimeException e) {
+                synchronized (this) {
+                    running--;
+                }
+                throw e;
+            }
+        }
+    }
+}
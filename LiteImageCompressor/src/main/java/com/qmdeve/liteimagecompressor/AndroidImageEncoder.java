@@ -0,0 +1,65 @@
+package com.qmdeve.liteimagecompressor;
+
+import android.graphics.Bitmap;
+import android.os.Build;
+
+import com.qmdeve.liteimagecompressor.codec.ImageEncoder;
+import com.qmdeve.liteimagecompressor.codec.ImageFormat;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * {@link ImageEncoder} on Bitmap.compress, which {@link TargetSizeEncoder} runs the quality
+ * search on for every Android encode. There is no matching decoder: the library decodes with its own
+ * {@link BitmapDecoder}, so the codec SPI's decode side is only used on the JVM.
+ */
+final class AndroidImageEncoder implements ImageEncoder<BitmapPixels> {
+    @Override
+    public void encode(BitmapPixels pixels, ImageFormat format, int quality, OutputStream out) throws IOException {
+        if (!pixels.bitmap.compress(compressFormat(format), quality, out)) {
+            throw new IOException("Failed to encode " + format);
+        }
+    }
+
+    @Override
+    public BitmapPixels scale(BitmapPixels pixels, int width, int height) {
+        return new BitmapPixels(Bitmap.createScaledBitmap(pixels.bitmap, width, height, true));
+    }
+
+    /**
+     * The deprecated WEBP keeps its own value, so quality 100 still encodes lossless.
+     */
+    static ImageFormat imageFormat(Bitmap.CompressFormat format) {
+        switch (format.name()) {
+            case "PNG":
+                return ImageFormat.PNG;
+            case "WEBP":
+                return ImageFormat.WEBP;
+            case "WEBP_LOSSLESS":
+                return ImageFormat.WEBP_LOSSLESS;
+            case "WEBP_LOSSY":
+                return ImageFormat.WEBP_LOSSY;
+            default:
+                return ImageFormat.JPEG;
+        }
+    }
+
+    // WEBP_LOSSY/WEBP_LOSSLESS only exist from API 30; WEBP stands in for both before that
+    static Bitmap.CompressFormat compressFormat(ImageFormat format) {
+        switch (format) {
+            case PNG:
+                return Bitmap.CompressFormat.PNG;
+            case WEBP:
+                return Bitmap.CompressFormat.WEBP;
+            case WEBP_LOSSY:
+                return Build.VERSION.SDK_INT >= Build.VERSION_CODES.R
+                        ? Bitmap.CompressFormat.valueOf("WEBP_LOSSY") : Bitmap.CompressFormat.WEBP;
+            case WEBP_LOSSLESS:
+                return Build.VERSION.SDK_INT >= Build.VERSION_CODES.R
+                        ? Bitmap.CompressFormat.valueOf("WEBP_LOSSLESS") : Bitmap.CompressFormat.WEBP;
+            default:
+                return Bitmap.CompressFormat.JPEG;
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package com.qmdeve.liteimagecompressor;
+
+import java.util.Collections;
+import java.util.List;
+
+public class BatchCompressResult {
+    private List<CompressResult> results;
+    private int successCount;
+    private int failureCount;
+    private long totalOriginalSize;
+    private long totalCompressedSize;
+
+    private BatchCompressResult(Builder builder) {
+        this.results = Collections.unmodifiableList(builder.results);
+        for (CompressResult result : results) {
+            if (result.isSuccess()) {
+                successCount++;
+                totalOriginalSize += result.getOriginalSize();
+                totalCompressedSize += result.getCompressedSize();
+            } else {
+                failureCount++;
+            }
+        }
+    }
+
+    /**
+     * Per-item results in the same order as the input list.
+     */
+    public List<CompressResult> getResults() { return results; }
+    public int getSuccessCount() { return successCount; }
+    public int getFailureCount() { return failureCount; }
+    public long getTotalOriginalSize() { return totalOriginalSize; }
+    public long getTotalCompressedSize() { return totalCompressedSize; }
+    public long getTotalBytesSaved() { return totalOriginalSize - totalCompressedSize; }
+
+    public static class Builder {
+        private List<CompressResult> results = Collections.emptyList();
+
+        public Builder setResults(List<CompressResult> results) {
+            this.results = results;
+            return this;
+        }
+
+        public BatchCompressResult build() {
+            return new BatchCompressResult(this);
+        }
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+}
@@ -0,0 +1,696 @@
+package com.qmdeve.liteimagecompressor;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.BitmapRegionDecoder;
+import android.graphics.Canvas;
+import android.graphics.Matrix;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.os.Build;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+
+/**
+ * Two-pass decoder: reads the image bounds first, then decodes with a power-of-two
+ * inSampleSize so peak heap scales with the target size instead of the source size.
+ * When a {@link BitmapPool} is set, decodes and rescales reuse pooled bitmaps.
+ * Sources above the configured pixel threshold are decoded in strips instead, into an output
+ * of at most {@link #MAX_TILED_PIXELS}.
+ * Opaque JPEG sources headed for JPEG output decode as RGB_565 unless a config is forced.
+ * EXIF orientation is applied in the same draw that scales the sampled bitmap to its final
+ * size. Flips and 180 degree rotations that need no scaling are done in place; a 90 degree
+ * rotation that needs none is drawn into a second, pooled bitmap of the same size.
+ * Under memory pressure an {@link AdaptiveScheduler} makes it sample further than the
+ * configured bounds require.
+ */
+final class BitmapDecoder {
+    private static final int STRIP_PIXELS = 1024 * 1024;
+    // 48MB as ARGB_8888; the threshold alone would allow a 160MB output at its default
+    private static final int MAX_TILED_PIXELS = 12_000_000;
+    private static final int MIN_PRESSURE_SIDE = 512;
+    private static final int STREAM_BUFFER_SIZE = 64 * 1024;
+    private static final int STREAM_HEADER_LIMIT = 64 * 1024;
+    private static final int STREAM_BOUNDS_LIMIT = 1024 * 1024;
+
+    private final CompressConfig config;
+    private final BitmapPool pool;
+    private final AdaptiveScheduler scheduler;
+
+    BitmapDecoder(CompressConfig config, BitmapPool pool) {
+        this(config, pool, null);
+    }
+
+    BitmapDecoder(CompressConfig config, BitmapPool pool, AdaptiveScheduler scheduler) {
+        this.config = config;
+        this.pool = pool;
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * Decodes through one open file descriptor for the bounds pass, the pixel decode and the
+     * region decoder, so the native decoder reads the file directly with no Java-side buffer.
+     */
+    Bitmap decodeFile(File file) throws IOException {
+        return decodeFile(file, null);
+    }
+
+    /**
+     * @param header already sniffed header of the file, or null to read it here; when it
+     *               carries dimensions the bounds pass is skipped
+     */
+    Bitmap decodeFile(File file, ImageHeader header) throws IOException {
+        return decodeFile(file, header, null);
+    }
+
+    /**
+     * @param session receives the pressure sampling applied to this decode, may be null
+     */
+    Bitmap decodeFile(File file, ImageHeader header, CompressSession session) throws IOException {
+        try (FileInputStream in = new FileInputStream(file)) {
+            return decodeDescriptor(in, header, session);
+        }
+    }
+
+    /**
+     * Same as {@link #decodeFile(File, ImageHeader)} for an already open, seekable descriptor,
+     * such as one from ContentResolver.openFileDescriptor. The caller closes it.
+     */
+    Bitmap decodeDescriptor(FileInputStream in, ImageHeader header, CompressSession session) throws IOException {
+        FileDescriptor fd = in.getFD();
+        FileChannel channel = in.getChannel();
+        if (header == null) {
+            header = ImageHeader.read(channel);
+        }
+        if (!header.isValid()) {
+            return null;
+        }
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        if (!applyHeader(header, options)) {
+            options.inJustDecodeBounds = true;
+            channel.position(0);
+            BitmapFactory.decodeFileDescriptor(fd, null, options);
+        }
+        int orientation = orientation(header);
+        if (shouldTile(options)) {
+            channel.position(0);
+            Bitmap tiled = decodeTiled(() -> openRegionDecoder(fd),
+                    options.outWidth, options.outHeight, decodeConfig(options), orientation, session);
+            if (tiled != null) {
+                return tiled;
+            }
+        }
+        if (!prepareDecode(options, orientation, session)) {
+            return null;
+        }
+
+        Bitmap bitmap;
+        try {
+            channel.position(0);
+            bitmap = BitmapFactory.decodeFileDescriptor(fd, null, options);
+        } catch (IllegalArgumentException e) {
+            if (!discardInBitmap(options)) {
+                throw e;
+            }
+            channel.position(0);
+            bitmap = BitmapFactory.decodeFileDescriptor(fd, null, options);
+        }
+        return scaleToFit(bitmap, orientation);
+    }
+
+    /**
+     * Single-pass decode of a stream that cannot be reopened. The header is peeked through a
+     * mark/reset buffer so the bounds pass is usually skipped; otherwise the bounds pass runs
+     * inside a bounded mark. Only the buffer, never the whole stream, is held on the heap.
+     * There is no tiled path: BitmapRegionDecoder would copy the whole stream natively, so
+     * sources above the tiling threshold are sampled down to it instead.
+     * The caller closes {@code in}.
+     */
+    Bitmap decodeStream(InputStream in, CompressSession session) throws IOException {
+        BufferedInputStream buffered = new BufferedInputStream(in, STREAM_BUFFER_SIZE);
+        buffered.mark(STREAM_HEADER_LIMIT);
+        byte[] head = new byte[STREAM_HEADER_LIMIT];
+        int length = 0;
+        int read;
+        while (length < head.length && (read = buffered.read(head, length, head.length - length)) != -1) {
+            length += read;
+        }
+        buffered.reset();
+
+        ImageHeader header = ImageHeader.parse(head, length);
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        if (!applyHeader(header, options)) {
+            // A header longer than the peek window is not proof of a broken file
+            if (!header.isValid() && length < STREAM_HEADER_LIMIT) {
+                return null;
+            }
+            buffered.mark(STREAM_BOUNDS_LIMIT);
+            options.inJustDecodeBounds = true;
+            BitmapFactory.decodeStream(buffered, null, options);
+            try {
+                buffered.reset();
+            } catch (IOException e) {
+                throw new IOException("Image header is larger than " + (STREAM_BOUNDS_LIMIT / 1024)
+                        + "KB, the stream cannot be rewound to decode it");
+            }
+        }
+        int orientation = orientation(header);
+        if (!prepareDecode(options, orientation, session)) {
+            return null;
+        }
+        if (shouldTile(options)) {
+            capSampledPixels(options);
+        }
+        Bitmap bitmap;
+        try {
+            bitmap = BitmapFactory.decodeStream(buffered, null, options);
+        } catch (IllegalArgumentException e) {
+            // No retry without inBitmap here: the failed attempt has already consumed the stream
+            discardInBitmap(options);
+            throw e;
+        }
+        return scaleToFit(bitmap, orientation);
+    }
+
+    /**
+     * Doubles inSampleSize until the sampled image is within the pixel cap a tiled decode
+     * would have applied, and re-picks the pooled inBitmap to match.
+     */
+    private void capSampledPixels(BitmapFactory.Options options) {
+        long maxPixels = tiledOutputPixels();
+        int sampleSize = options.inSampleSize;
+        while ((long) (options.outWidth / sampleSize) * (options.outHeight / sampleSize) > maxPixels) {
+            sampleSize *= 2;
+        }
+        if (sampleSize == options.inSampleSize) {
+            return;
+        }
+        options.inSampleSize = sampleSize;
+        discardInBitmap(options);
+        attachInBitmap(options, (options.outWidth + sampleSize - 1) / sampleSize,
+                (options.outHeight + sampleSize - 1) / sampleSize);
+    }
+
+    Bitmap decodeByteArray(byte[] data) {
+        return decodeByteArray(data, data == null ? 0 : data.length);
+    }
+
+    Bitmap decodeByteArray(byte[] data, int length) {
+        return decodeByteArray(data, length, null);
+    }
+
+    Bitmap decodeByteArray(byte[] data, int length, CompressSession session) {
+        if (data == null || length <= 0) {
+            return null;
+        }
+
+        ImageHeader header = ImageHeader.parse(data, length);
+        if (!header.isValid()) {
+            return null;
+        }
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        if (!applyHeader(header, options)) {
+            options.inJustDecodeBounds = true;
+            BitmapFactory.decodeByteArray(data, 0, length, options);
+        }
+        int orientation = orientation(header);
+        if (shouldTile(options)) {
+            Bitmap tiled = decodeTiled(() -> openRegionDecoder(data, length),
+                    options.outWidth, options.outHeight, decodeConfig(options), orientation, session);
+            if (tiled != null) {
+                return tiled;
+            }
+        }
+        if (!prepareDecode(options, orientation, session)) {
+            return null;
+        }
+
+        Bitmap bitmap;
+        try {
+            bitmap = BitmapFactory.decodeByteArray(data, 0, length, options);
+        } catch (IllegalArgumentException e) {
+            if (!discardInBitmap(options)) {
+                throw e;
+            }
+            bitmap = BitmapFactory.decodeByteArray(data, 0, length, options);
+        }
+        return scaleToFit(bitmap, orientation);
+    }
+
+    /**
+     * Full-size decode of already compressed output, reusing a pooled bitmap when possible.
+     */
+    Bitmap decodeEncoded(byte[] data, int length) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeByteArray(data, 0, length, options);
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            return null;
+        }
+        options.inJustDecodeBounds = false;
+        options.inPreferredConfig = decodeConfig(options);
+        attachInBitmap(options, options.outWidth, options.outHeight);
+        try {
+            return BitmapFactory.decodeByteArray(data, 0, length, options);
+        } catch (IllegalArgumentException e) {
+            if (!discardInBitmap(options)) {
+                throw e;
+            }
+            return BitmapFactory.decodeByteArray(data, 0, length, options);
+        }
+    }
+
+    /**
+     * Returns a bitmap this decoder produced to the pool, or recycles it when there is none.
+     */
+    void release(Bitmap bitmap) {
+        if (bitmap == null) {
+            return;
+        }
+        if (pool == null || !pool.put(bitmap)) {
+            bitmap.recycle();
+        }
+    }
+
+    private boolean prepareDecode(BitmapFactory.Options options, int orientation, CompressSession session) {
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            return false;
+        }
+        options.inJustDecodeBounds = false;
+        options.inPreferredConfig = decodeConfig(options);
+        boolean transposed = ImageHeader.isTransposed(orientation);
+        if (orientation > 1 && !transposed) {
+            // Lets scaleToFit flip the decode in place when it needs no scaling
+            options.inMutable = true;
+        }
+        options.inSampleSize = calculateInSampleSize(options.outWidth, options.outHeight,
+                transposed ? config.getMaxHeight() : config.getMaxWidth(),
+                transposed ? config.getMaxWidth() : config.getMaxHeight());
+        options.inSampleSize *= pressureSampleFactor(options.outWidth / options.inSampleSize,
+                options.outHeight / options.inSampleSize, session);
+        int sampledWidth = (options.outWidth + options.inSampleSize - 1) / options.inSampleSize;
+        int sampledHeight = (options.outHeight + options.inSampleSize - 1) / options.inSampleSize;
+        attachInBitmap(options, sampledWidth, sampledHeight);
+        return true;
+    }
+
+    /**
+     * Extra downsampling requested by the scheduler, reduced so the longest side of an image
+     * of width x height stays at least MIN_PRESSURE_SIDE, and recorded on {@code session}.
+     */
+    private int pressureSampleFactor(int width, int height, CompressSession session) {
+        if (scheduler == null) {
+            return 1;
+        }
+        int factor = scheduler.sampleFactor();
+        while (factor > 1 && Math.max(width, height) / factor < MIN_PRESSURE_SIDE) {
+            factor /= 2;
+        }
+        if (session != null) {
+            session.recordPressureSample(factor);
+        }
+        return factor;
+    }
+
+    private int orientation(ImageHeader header) {
+        return config.isApplyExifOrientation() ? header.orientation : 1;
+    }
+
+    private static boolean applyHeader(ImageHeader header, BitmapFactory.Options options) {
+        if (!header.hasDimensions()) {
+            return false;
+        }
+        options.outWidth = header.width;
+        options.outHeight = header.height;
+        options.outMimeType = header.mimeType;
+        return true;
+    }
+
+    private long tiledOutputPixels() {
+        return Math.min(config.getTiledDecodeThreshold(), MAX_TILED_PIXELS);
+    }
+
+    // The boolean isShareable overloads are deprecated from API 31, where sharing is ignored
+    @SuppressWarnings("deprecation")
+    private static BitmapRegionDecoder openRegionDecoder(FileDescriptor fd) throws IOException {
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.S
+                ? BitmapRegionDecoder.newInstance(fd) : BitmapRegionDecoder.newInstance(fd, false);
+    }
+
+    @SuppressWarnings("deprecation")
+    private static BitmapRegionDecoder openRegionDecoder(byte[] data, int length) throws IOException {
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.S
+                ? BitmapRegionDecoder.newInstance(data, 0, length)
+                : BitmapRegionDecoder.newInstance(data, 0, length, false);
+    }
+
+    private boolean shouldTile(BitmapFactory.Options options) {
+        int threshold = config.getTiledDecodeThreshold();
+        return threshold > 0 && (long) options.outWidth * options.outHeight > threshold;
+    }
+
+    /**
+     * Decodes the source as full-width horizontal strips, each subsampled and drawn scaled into
+     * the output, so only one strip and the output are resident at a time. Returns null when
+     * the format has no region decoder support, letting the caller fall back to a whole decode.
+     */
+    private Bitmap decodeTiled(RegionSource source, int width, int height, Bitmap.Config bitmapConfig,
+                               int orientation, CompressSession session) {
+        BitmapRegionDecoder regionDecoder;
+        try {
+            regionDecoder = source.open();
+        } catch (IOException e) {
+            return null;
+        }
+        if (regionDecoder == null) {
+            return null;
+        }
+
+        Bitmap output = null;
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        try {
+            float scale = fitScale(width, height, orientation);
+            long maxPixels = tiledOutputPixels();
+            if ((double) width * height * scale * scale > maxPixels) {
+                scale = (float) Math.sqrt((double) maxPixels / ((double) width * height));
+            }
+            scale /= pressureSampleFactor(Math.round(width * scale), Math.round(height * scale), session);
+            int targetWidth = Math.max(1, Math.round(width * scale));
+            int targetHeight = Math.max(1, Math.round(height * scale));
+            float scaleY = (float) targetHeight / height;
+
+            int sampleSize = calculateInSampleSize(width, height, targetWidth, targetHeight);
+            int sampledWidth = (width + sampleSize - 1) / sampleSize;
+            int stripHeight = Math.max(1, STRIP_PIXELS / sampledWidth) * sampleSize;
+
+            boolean transposed = ImageHeader.isTransposed(orientation);
+            output = obtainBitmap(transposed ? targetHeight : targetWidth,
+                    transposed ? targetWidth : targetHeight, bitmapConfig);
+            Canvas canvas = new Canvas(output);
+            if (orientation > 1) {
+                Matrix matrix = new Matrix();
+                orient(matrix, orientation, targetWidth, targetHeight);
+                canvas.concat(matrix);
+            }
+            Paint paint = new Paint(Paint.FILTER_BITMAP_FLAG);
+            options.inSampleSize = sampleSize;
+            options.inPreferredConfig = bitmapConfig;
+            options.inMutable = true;
+            if (pool != null) {
+                options.inBitmap = pool.get(sampledWidth * (stripHeight / sampleSize) * bytesPerPixel(bitmapConfig));
+            }
+
+            Rect region = new Rect();
+            Rect src = new Rect();
+            RectF dst = new RectF();
+            for (int top = 0; top < height; top += stripHeight) {
+                int bottom = Math.min(height, top + stripHeight);
+                region.set(0, top, width, bottom);
+                Bitmap strip;
+                try {
+                    strip = regionDecoder.decodeRegion(region, options);
+                } catch (IllegalArgumentException e) {
+                    if (!discardInBitmap(options)) {
+                        throw e;
+                    }
+                    strip = regionDecoder.decodeRegion(region, options);
+                }
+                if (strip == null) {
+                    release(output);
+                    return null;
+                }
+                src.set(0, 0, sampledWidth, (bottom - top + sampleSize - 1) / sampleSize);
+                dst.set(0, top * scaleY, targetWidth, bottom * scaleY);
+                canvas.drawBitmap(strip, src, dst, paint);
+                if (options.inBitmap != strip) {
+                    release(options.inBitmap);
+                    options.inBitmap = strip;
+                }
+            }
+            return output;
+        } catch (RuntimeException e) {
+            release(output);
+            throw e;
+        } finally {
+            release(options.inBitmap);
+            regionDecoder.recycle();
+        }
+    }
+
+    private void attachInBitmap(BitmapFactory.Options options, int width, int height) {
+        if (pool == null) {
+            return;
+        }
+        options.inMutable = true;
+        options.inBitmap = pool.get(width * height * bytesPerPixel(options.inPreferredConfig));
+    }
+
+    /**
+     * The configured decode config, or RGB_565 when both the source and the output are JPEG
+     * (neither can carry alpha) and ARGB_8888 otherwise.
+     */
+    private Bitmap.Config decodeConfig(BitmapFactory.Options bounds) {
+        if (config.getDecodeConfig() != null) {
+            return config.getDecodeConfig();
+        }
+        if (!config.isAutoFormat() && config.getFormat() == Bitmap.CompressFormat.JPEG
+                && "image/jpeg".equals(bounds.outMimeType)) {
+            return Bitmap.Config.RGB_565;
+        }
+        return Bitmap.Config.ARGB_8888;
+    }
+
+    private static int bytesPerPixel(Bitmap.Config bitmapConfig) {
+        if (bitmapConfig == null) {
+            return 4;
+        }
+        switch (bitmapConfig.name()) {
+            case "ALPHA_8":
+                return 1;
+            case "RGB_565":
+            case "ARGB_4444":
+                return 2;
+            case "RGBA_F16":
+                return 8;
+            default:
+                return 4;
+        }
+    }
+
+    private boolean discardInBitmap(BitmapFactory.Options options) {
+        if (options.inBitmap == null) {
+            return false;
+        }
+        release(options.inBitmap);
+        options.inBitmap = null;
+        return true;
+    }
+
+    /**
+     * Largest power of two that keeps the sampled image at or above the requested bounds,
+     * so the final exact scale in {@link #scaleToFit} only ever shrinks. An unset (0) bound
+     * leaves its side unconstrained.
+     */
+    static int calculateInSampleSize(int width, int height, int maxWidth, int maxHeight) {
+        if (maxWidth <= 0 && maxHeight <= 0) {
+            return 1;
+        }
+        int inSampleSize = 1;
+        while ((maxWidth <= 0 || width / (inSampleSize * 2) >= maxWidth)
+                && (maxHeight <= 0 || height / (inSampleSize * 2) >= maxHeight)) {
+            inSampleSize *= 2;
+        }
+        return inSampleSize;
+    }
+
+    /**
+     * Scale that fits the image within the max dimensions once it is oriented.
+     */
+    private float fitScale(int width, int height, int orientation) {
+        boolean transposed = ImageHeader.isTransposed(orientation);
+        int maxWidth = transposed ? config.getMaxHeight() : config.getMaxWidth();
+        int maxHeight = transposed ? config.getMaxWidth() : config.getMaxHeight();
+        float scale = 1f;
+        if (maxWidth > 0 && width > maxWidth) {
+            scale = Math.min(scale, (float) maxWidth / width);
+        }
+        if (maxHeight > 0 && height > maxHeight) {
+            scale = Math.min(scale, (float) maxHeight / height);
+        }
+        return scale;
+    }
+
+    private Bitmap scaleToFit(Bitmap bitmap, int orientation) {
+        if (bitmap == null) {
+            return null;
+        }
+
+        int width = bitmap.getWidth();
+        int height = bitmap.getHeight();
+        float scale = fitScale(width, height, orientation);
+        int targetWidth = Math.max(1, Math.round(width * Math.min(scale, 1f)));
+        int targetHeight = Math.max(1, Math.round(height * Math.min(scale, 1f)));
+        if (orientation > 1 && scale >= 1f && !ImageHeader.isTransposed(orientation) && bitmap.isMutable()) {
+            flipInPlace(bitmap, orientation);
+            return bitmap;
+        }
+        if (orientation > 1) {
+            Bitmap oriented = orientInto(bitmap, orientation, targetWidth, targetHeight);
+            release(bitmap);
+            return oriented;
+        }
+        if (scale >= 1f) {
+            return bitmap;
+        }
+
+        Bitmap scaled = scaleIntoPooled(bitmap, targetWidth, targetHeight);
+        if (scaled == null) {
+            scaled = Bitmap.createScaledBitmap(bitmap, targetWidth, targetHeight, true);
+        }
+        if (scaled != bitmap) {
+            release(bitmap);
+        }
+        return scaled;
+    }
+
+    private Bitmap scaleIntoPooled(Bitmap source, int width, int height) {
+        Bitmap target = pooledBitmap(width, height, source.getConfig());
+        if (target == null) {
+            return null;
+        }
+        target.setHasAlpha(source.hasAlpha());
+        new Canvas(target).drawBitmap(source, null, new Rect(0, 0, width, height),
+                new Paint(Paint.FILTER_BITMAP_FLAG));
+        return target;
+    }
+
+    /**
+     * Applies orientation 2 (mirror), 3 (rotate 180) or 4 (flip) a row or a pair of rows at a time.
+     */
+    private static void flipInPlace(Bitmap bitmap, int orientation) {
+        int width = bitmap.getWidth();
+        int height = bitmap.getHeight();
+        int[] upper = new int[width];
+        if (orientation == 2) {
+            for (int y = 0; y < height; y++) {
+                bitmap.getPixels(upper, 0, width, 0, y, width, 1);
+                reverse(upper);
+                bitmap.setPixels(upper, 0, width, 0, y, width, 1);
+            }
+            return;
+        }
+        int[] lower = new int[width];
+        for (int top = 0, bottom = height - 1; top <= bottom; top++, bottom--) {
+            bitmap.getPixels(upper, 0, width, 0, top, width, 1);
+            bitmap.getPixels(lower, 0, width, 0, bottom, width, 1);
+            if (orientation == 3) {
+                reverse(upper);
+                reverse(lower);
+            }
+            bitmap.setPixels(lower, 0, width, 0, top, width, 1);
+            bitmap.setPixels(upper, 0, width, 0, bottom, width, 1);
+        }
+    }
+
+    private static void reverse(int[] row) {
+        for (int i = 0, j = row.length - 1; i < j; i++, j--) {
+            int pixel = row[i];
+            row[i] = row[j];
+            row[j] = pixel;
+        }
+    }
+
+    /**
+     * Draws {@code source} scaled to width x height and oriented, in one pass.
+     */
+    private Bitmap orientInto(Bitmap source, int orientation, int width, int height) {
+        boolean transposed = ImageHeader.isTransposed(orientation);
+        Bitmap target = obtainBitmap(transposed ? height : width, transposed ? width : height, source.getConfig());
+        target.setHasAlpha(source.hasAlpha());
+        Matrix matrix = new Matrix();
+        matrix.setScale((float) width / source.getWidth(), (float) height / source.getHeight());
+        orient(matrix, orientation, width, height);
+        new Canvas(target).drawBitmap(source, matrix, new Paint(Paint.FILTER_BITMAP_FLAG));
+        return target;
+    }
+
+    /**
+     * Appends the EXIF orientation transform for an unoriented image of width x height, mapping
+     * it onto the oriented output with its origin at (0, 0).
+     */
+    private static void orient(Matrix matrix, int orientation, int width, int height) {
+        switch (orientation) {
+            case 2: // flip horizontal
+                matrix.postScale(-1, 1);
+                matrix.postTranslate(width, 0);
+                break;
+            case 3: // rotate 180
+                matrix.postRotate(180);
+                matrix.postTranslate(width, height);
+                break;
+            case 4: // flip vertical
+                matrix.postScale(1, -1);
+                matrix.postTranslate(0, height);
+                break;
+            case 5: // transpose
+                matrix.postRotate(90);
+                matrix.postScale(-1, 1);
+                break;
+            case 6: // rotate 90
+                matrix.postRotate(90);
+                matrix.postTranslate(height, 0);
+                break;
+            case 7: // transverse
+                matrix.postRotate(-90);
+                matrix.postScale(-1, 1);
+                matrix.postTranslate(height, width);
+                break;
+            case 8: // rotate 270
+                matrix.postRotate(-90);
+                matrix.postTranslate(0, width);
+                break;
+            default:
+                break;
+        }
+    }
+
+    private Bitmap obtainBitmap(int width, int height, Bitmap.Config bitmapConfig) {
+        if (bitmapConfig == null) {
+            bitmapConfig = Bitmap.Config.ARGB_8888;
+        }
+        Bitmap bitmap = pooledBitmap(width, height, bitmapConfig);
+        return bitmap != null ? bitmap : Bitmap.createBitmap(width, height, bitmapConfig);
+    }
+
+    private Bitmap pooledBitmap(int width, int height, Bitmap.Config bitmapConfig) {
+        if (pool == null) {
+            return null;
+        }
+        if (bitmapConfig == null) {
+            bitmapConfig = Bitmap.Config.ARGB_8888;
+        }
+        Bitmap bitmap = pool.get(width * height * bytesPerPixel(bitmapConfig));
+        if (bitmap == null) {
+            return null;
+        }
+        try {
+            bitmap.reconfigure(width, height, bitmapConfig);
+        } catch (IllegalArgumentException e) {
+            bitmap.recycle();
+            return null;
+        }
+        bitmap.eraseColor(0);
+        return bitmap;
+    }
+
+    private interface RegionSource {
+        BitmapRegionDecoder open() throws IOException;
+    }
+}
@@ -0,0 +1,38 @@
+package com.qmdeve.liteimagecompressor;
+
+import android.graphics.Bitmap;
+
+import com.qmdeve.liteimagecompressor.codec.PixelBuffer;
+
+final class BitmapPixels implements PixelBuffer {
+    final Bitmap bitmap;
+
+    BitmapPixels(Bitmap bitmap) {
+        this.bitmap = bitmap;
+    }
+
+    @Override
+    public int getWidth() {
+        return bitmap.getWidth();
+    }
+
+    @Override
+    public int getHeight() {
+        return bitmap.getHeight();
+    }
+
+    @Override
+    public boolean hasAlpha() {
+        return bitmap.hasAlpha();
+    }
+
+    @Override
+    public long getAllocationByteCount() {
+        return bitmap.getAllocationByteCount();
+    }
+
+    @Override
+    public void release() {
+        bitmap.recycle();
+    }
+}
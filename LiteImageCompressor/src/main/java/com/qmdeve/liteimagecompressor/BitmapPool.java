@@ -0,0 +1,107 @@
+package com.qmdeve.liteimagecompressor;
+
+import android.graphics.Bitmap;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Pool of mutable bitmaps reused as BitmapFactory.Options.inBitmap targets. Bitmaps are
+ * bucketed by allocation size and evicted least-recently-released first once the pool
+ * exceeds its byte budget. Safe to share between compressors.
+ */
+public class BitmapPool {
+    private static final int MAX_OVERSIZE_MULTIPLE = 4;
+
+    private final long maxSize;
+    private final TreeMap<Integer, ArrayDeque<Bitmap>> buckets = new TreeMap<>();
+    private final LinkedHashSet<Bitmap> lru = new LinkedHashSet<>();
+    private long currentSize;
+
+    public BitmapPool(long maxSizeBytes) {
+        if (maxSizeBytes <= 0) {
+            throw new IllegalArgumentException("Pool size must be positive");
+        }
+        this.maxSize = maxSizeBytes;
+    }
+
+    /**
+     * Returns a pooled bitmap with at least {@code minBytes} of storage, or null. The bitmap
+     * is removed from the pool; its dimensions and contents are undefined until reused.
+     */
+    public synchronized Bitmap get(int minBytes) {
+        Map.Entry<Integer, ArrayDeque<Bitmap>> entry = buckets.ceilingEntry(minBytes);
+        if (entry == null || entry.getKey() > (long) minBytes * MAX_OVERSIZE_MULTIPLE) {
+            return null;
+        }
+
+        ArrayDeque<Bitmap> bucket = entry.getValue();
+        Bitmap bitmap = bucket.pollLast();
+        if (bucket.isEmpty()) {
+            buckets.remove(entry.getKey());
+        }
+        lru.remove(bitmap);
+        currentSize -= entry.getKey();
+        return bitmap;
+    }
+
+    /**
+     * Offers a bitmap for reuse. Returns false if it cannot be pooled (recycled, immutable or
+     * larger than the whole budget); the caller still owns it in that case.
+     */
+    public synchronized boolean put(Bitmap bitmap) {
+        if (bitmap == null || bitmap.isRecycled() || !bitmap.isMutable()) {
+            return false;
+        }
+        int size = bitmap.getAllocationByteCount();
+        if (size > maxSize) {
+            return false;
+        }
+        if (!lru.add(bitmap)) {
+            return true;
+        }
+
+        ArrayDeque<Bitmap> bucket = buckets.get(size);
+        if (bucket == null) {
+            bucket = new ArrayDeque<>();
+            buckets.put(size, bucket);
+        }
+        bucket.addLast(bitmap);
+        currentSize += size;
+        trimToSize(maxSize);
+        return true;
+    }
+
+    public synchronized void clear() {
+        trimToSize(0);
+    }
+
+    public synchronized long getCurrentSize() {
+        return currentSize;
+    }
+
+    public long getMaxSize() {
+        return maxSize;
+    }
+
+    private void trimToSize(long size) {
+        Iterator<Bitmap> iterator = lru.iterator();
+        while (currentSize > size && iterator.hasNext()) {
+            Bitmap eldest = iterator.next();
+            iterator.remove();
+            int bytes = eldest.getAllocationByteCount();
+            ArrayDeque<Bitmap> bucket = buckets.get(bytes);
+            if (bucket != null) {
+                bucket.remove(eldest);
+                if (bucket.isEmpty()) {
+                    buckets.remove(bytes);
+                }
+            }
+            currentSize -= bytes;
+            eldest.recycle();
+        }
+    }
+}
@@ -2,15 +2,46 @@ package com.qmdeve.liteimagecompressor;
 
 import android.graphics.Bitmap;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
 public class CompressConfig {
     private int maxSize;
     private int quality;
     private Bitmap.CompressFormat format;
+    private int maxWidth;
+    private int maxHeight;
+    private boolean fitToMaxSize;
+    private int minQuality;
+    private int maxEncodePasses;
+    private boolean downscaleToFit;
+    private boolean lazyDecode;
+    private int tiledDecodeThreshold;
+    private Bitmap.Config decodeConfig;
+    private boolean applyExifOrientation;
+    private List<String> preservedExifTags;
+    private float minSsim;
+    private boolean autoFormat;
 
     private CompressConfig(Builder builder) {
         this.maxSize = builder.maxSize;
         this.quality = builder.quality;
         this.format = builder.format;
+        this.maxWidth = builder.maxWidth;
+        this.maxHeight = builder.maxHeight;
+        this.fitToMaxSize = builder.fitToMaxSize;
+        this.minQuality = builder.minQuality;
+        this.maxEncodePasses = builder.maxEncodePasses;
+        this.downscaleToFit = builder.downscaleToFit;
+        this.lazyDecode = builder.lazyDecode;
+        this.tiledDecodeThreshold = builder.tiledDecodeThreshold;
+        this.decodeConfig = builder.decodeConfig;
+        this.applyExifOrientation = builder.applyExifOrientation;
+        this.preservedExifTags = builder.preservedExifTags;
+        this.minSsim = builder.minSsim;
+        this.autoFormat = builder.autoFormat;
     }
 
     public int getMaxSize() {
@@ -25,10 +56,118 @@ public class CompressConfig {
         return format;
     }
 
+    public int getMaxWidth() {
+        return maxWidth;
+    }
+
+    public int getMaxHeight() {
+        return maxHeight;
+    }
+
+    public boolean isFitToMaxSize() {
+        return fitToMaxSize;
+    }
+
+    public int getMinQuality() {
+        return minQuality;
+    }
+
+    public int getMaxEncodePasses() {
+        return maxEncodePasses;
+    }
+
+    public boolean isDownscaleToFit() {
+        return downscaleToFit;
+    }
+
+    public boolean isLazyDecode() {
+        return lazyDecode;
+    }
+
+    public int getTiledDecodeThreshold() {
+        return tiledDecodeThreshold;
+    }
+
+    public Bitmap.Config getDecodeConfig() {
+        return decodeConfig;
+    }
+
+    public boolean isApplyExifOrientation() {
+        return applyExifOrientation;
+    }
+
+    public List<String> getPreservedExifTags() {
+        return preservedExifTags;
+    }
+
+    public float getMinSsim() {
+        return minSsim;
+    }
+
+    public boolean isAutoFormat() {
+        return autoFormat;
+    }
+
+    /**
+     * Fields that affect the encoded output, used in result cache keys. A new output field
+     * needs its own line here.
+     */
+    String cacheKey() {
+        return new StringBuilder()
+                .append(maxSize).append(':')
+                .append(quality).append(':')
+                .append(format).append(':')
+                .append(maxWidth).append(':')
+                .append(maxHeight).append(':')
+                .append(fitToMaxSize).append(':')
+                .append(minQuality).append(':')
+                .append(maxEncodePasses).append(':')
+                .append(downscaleToFit).append(':')
+                .append(tiledDecodeThreshold).append(':')
+                .append(decodeConfig).append(':')
+                .append(applyExifOrientation).append(':')
+                .append(minSsim).append(':')
+                .append(autoFormat)
+                .toString();
+    }
+
+    public Builder toBuilder() {
+        return new Builder()
+                .setMaxSize(maxSize)
+                .setQuality(quality)
+                .setFormat(format)
+                .setMaxWidth(maxWidth)
+                .setMaxHeight(maxHeight)
+                .setFitToMaxSize(fitToMaxSize)
+                .setMinQuality(minQuality)
+                .setMaxEncodePasses(maxEncodePasses)
+                .setDownscaleToFit(downscaleToFit)
+                .setLazyDecode(lazyDecode)
+                .setTiledDecodeThreshold(tiledDecodeThreshold)
+                .setDecodeConfig(decodeConfig)
+                .setApplyExifOrientation(applyExifOrientation)
+                .setPreservedExifTags(preservedExifTags.toArray(new String[0]))
+                .setMinSsim(minSsim)
+                .setAutoFormat(autoFormat);
+    }
+
     public static class Builder {
         private int maxSize = 1024;
         private int quality = 80;
         private Bitmap.CompressFormat format = Bitmap.CompressFormat.JPEG;
+        private int maxWidth = 0;
+        private int maxHeight = 0;
+        private boolean fitToMaxSize = false;
+        private int minQuality = 10;
+        private int maxEncodePasses = 8;
+        private boolean downscaleToFit = false;
+        private boolean lazyDecode = false;
+        private int tiledDecodeThreshold = 40_000_000;
+        private Bitmap.Config decodeConfig = null;
+        private boolean applyExifOrientation = true;
+        private List<String> preservedExifTags = Collections.emptyList();
+        private float minSsim = 0f;
+        private boolean autoFormat = false;
 
         public Builder setMaxSize(int maxSizeKB) {
             this.maxSize = maxSizeKB;
@@ -48,6 +187,142 @@ public class CompressConfig {
             return this;
         }
 
+        /**
+         * Maximum decoded width in pixels, 0 means unlimited.
+         */
+        public Builder setMaxWidth(int maxWidth) {
+            if (maxWidth < 0) {
+                throw new IllegalArgumentException("Max width must not be negative");
+            }
+            this.maxWidth = maxWidth;
+            return this;
+        }
+
+        /**
+         * Maximum decoded height in pixels, 0 means unlimited.
+         */
+        public Builder setMaxHeight(int maxHeight) {
+            if (maxHeight < 0) {
+                throw new IllegalArgumentException("Max height must not be negative");
+            }
+            this.maxHeight = maxHeight;
+            return this;
+        }
+
+        /**
+         * Binary-search the encode quality between minQuality and quality so the output lands
+         * just under maxSize, instead of encoding once at quality.
+         */
+        public Builder setFitToMaxSize(boolean fitToMaxSize) {
+            this.fitToMaxSize = fitToMaxSize;
+            return this;
+        }
+
+        public Builder setMinQuality(int minQuality) {
+            if (minQuality < 0 || minQuality > 100) {
+                throw new IllegalArgumentException("Min quality must be between 0 and 100");
+            }
+            this.minQuality = minQuality;
+            return this;
+        }
+
+        /**
+         * Upper bound on encodes per quality search, including the first encode at quality.
+         */
+        public Builder setMaxEncodePasses(int maxEncodePasses) {
+            if (maxEncodePasses < 1) {
+                throw new IllegalArgumentException("Max encode passes must be at least 1");
+            }
+            this.maxEncodePasses = maxEncodePasses;
+            return this;
+        }
+
+        /**
+         * When even minQuality is above maxSize, shrink the bitmap and search again.
+         */
+        public Builder setDownscaleToFit(boolean downscaleToFit) {
+            this.downscaleToFit = downscaleToFit;
+            return this;
+        }
+
+        /**
+         * Return inputs already under maxSize by reference (getSourceFile/getData) and only
+         * decode them when getCompressedBitmap() is called.
+         */
+        public Builder setLazyDecode(boolean lazyDecode) {
+            this.lazyDecode = lazyDecode;
+            return this;
+        }
+
+        /**
+         * Source pixel count above which images are decoded in strips with BitmapRegionDecoder,
+         * so peak memory depends on the strip size rather than the image size. The tiled output
+         * is also capped at this many pixels, and at 12 million, when no max dimensions are set.
+         * 0 disables it.
+         */
+        public Builder setTiledDecodeThreshold(int pixels) {
+            if (pixels < 0) {
+                throw new IllegalArgumentException("Tiled decode threshold must not be negative");
+            }
+            this.tiledDecodeThreshold = pixels;
+            return this;
+        }
+
+        /**
+         * Bitmap config used for decoding. null (the default) picks RGB_565 for JPEG sources
+         * compressed to JPEG, halving pixel memory, and ARGB_8888 for everything else.
+         * HARDWARE is rejected because decoded bitmaps are drawn into and reused.
+         */
+        public Builder setDecodeConfig(Bitmap.Config decodeConfig) {
+            if (decodeConfig != null && "HARDWARE".equals(decodeConfig.name())) {
+                throw new IllegalArgumentException("Hardware bitmaps cannot be used for decoding");
+            }
+            this.decodeConfig = decodeConfig;
+            return this;
+        }
+
+        /**
+         * Rotate/flip JPEG sources by their EXIF orientation while decoding. On by default.
+         */
+        public Builder setApplyExifOrientation(boolean applyExifOrientation) {
+            this.applyExifOrientation = applyExifOrientation;
+            return this;
+        }
+
+        /**
+         * ExifInterface tag names copied from the source to JPEG files written by compressToFile,
+         * e.g. {@code ExifInterface.TAG_DATETIME}. None by default.
+         */
+        public Builder setPreservedExifTags(String... tags) {
+            this.preservedExifTags = tags == null ? Collections.emptyList()
+                    : Collections.unmodifiableList(new ArrayList<>(Arrays.asList(tags)));
+            return this;
+        }
+
+        /**
+         * Encode at the lowest quality between minQuality and quality whose SSIM against the
+         * source, measured on a downscaled luma plane, stays at or above this value (e.g. 0.95).
+         * Combined with fitToMaxSize the size search starts from that quality instead; with
+         * maxSize 0 every input is compressed to the SSIM target alone. 0 (the default) disables it.
+         */
+        public Builder setMinSsim(float minSsim) {
+            if (minSsim < 0f || minSsim >= 1f) {
+                throw new IllegalArgumentException("Min SSIM must be at least 0 and below 1");
+            }
+            this.minSsim = minSsim;
+            return this;
+        }
+
+        /**
+         * Pick JPEG, PNG or WebP per image from its content instead of always using format:
+         * lossless for graphics with few colours, JPEG for opaque photos, lossy WebP for photos
+         * with alpha. Format is still used for size estimates made before decoding.
+         */
+        public Builder setAutoFormat(boolean autoFormat) {
+            this.autoFormat = autoFormat;
+            return this;
+        }
+
         public CompressConfig build() {
             return new CompressConfig(this);
         }
@@ -56,4 +331,4 @@ public class CompressConfig {
     public static Builder builder() {
         return new Builder();
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,222 @@
+package com.qmdeve.liteimagecompressor;
+
+import android.annotation.TargetApi;
+import android.os.Build;
+
+import java.util.Iterator;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Reactive-streams interfaces used by {@link LiteImageCompressor#compressStream}. They have the
+ * same shape as {@code java.util.concurrent.Flow}, which is only available from API 30;
+ * {@link #toFlow} and {@link #fromFlow} convert on API 30 and later.
+ */
+public final class CompressFlow {
+
+    private CompressFlow() {
+    }
+
+    public interface Publisher<T> {
+        void subscribe(Subscriber<? super T> subscriber);
+    }
+
+    public interface Subscriber<T> {
+        void onSubscribe(Subscription subscription);
+
+        void onNext(T item);
+
+        void onError(Throwable throwable);
+
+        void onComplete();
+    }
+
+    public interface Subscription {
+        void request(long n);
+
+        void cancel();
+    }
+
+    /**
+     * Publisher that emits the items of {@code items} on the requesting thread, only as fast as
+     * they are requested.
+     */
+    public static <T> Publisher<T> fromIterable(Iterable<? extends T> items) {
+        return subscriber -> subscriber.onSubscribe(new IterableSubscription<>(items.iterator(), subscriber));
+    }
+
+    /**
+     * Exposes {@code publisher} as a {@link Flow.Publisher}. Requires API 30.
+     */
+    @TargetApi(Build.VERSION_CODES.R)
+    public static <T> Flow.Publisher<T> toFlow(Publisher<T> publisher) {
+        requireFlow();
+        return subscriber -> publisher.subscribe(new ToFlowSubscriber<T>(subscriber));
+    }
+
+    /**
+     * Wraps a {@link Flow.Publisher}, for example a source list for compressStream. Requires
+     * API 30.
+     */
+    @TargetApi(Build.VERSION_CODES.R)
+    public static <T> Publisher<T> fromFlow(Flow.Publisher<T> publisher) {
+        requireFlow();
+        return subscriber -> publisher.subscribe(new FromFlowSubscriber<T>(subscriber));
+    }
+
+    private static void requireFlow() {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.R) {
+            throw new UnsupportedOperationException("java.util.concurrent.Flow requires API 30");
+        }
+    }
+
+    static long addCapped(AtomicLong requested, long n) {
+        while (true) {
+            long current = requested.get();
+            long next = current + n < 0 ? Long.MAX_VALUE : current + n;
+            if (requested.compareAndSet(current, next)) {
+                return current;
+            }
+        }
+    }
+
+    private static final class IterableSubscription<T> implements Subscription {
+        private final Iterator<? extends T> iterator;
+        private final Subscriber<? super T> subscriber;
+        private final AtomicLong requested = new AtomicLong();
+        private volatile boolean cancelled;
+
+        IterableSubscription(Iterator<? extends T> iterator, Subscriber<? super T> subscriber) {
+            this.iterator = iterator;
+            this.subscriber = subscriber;
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                cancel();
+                subscriber.onError(new IllegalArgumentException("Request must be positive: " + n));
+                return;
+            }
+            // Only the caller that moves demand off zero emits; re-entrant requests just add to it
+            if (addCapped(requested, n) != 0) {
+                return;
+            }
+
+            long emitted = 0;
+            while (true) {
+                long demand = requested.get();
+                while (emitted != demand) {
+                    if (cancelled) {
+                        return;
+                    }
+                    if (!iterator.hasNext()) {
+                        complete();
+                        return;
+                    }
+                    subscriber.onNext(iterator.next());
+                    emitted++;
+                }
+                if (cancelled) {
+                    return;
+                }
+                if (!iterator.hasNext()) {
+                    complete();
+                    return;
+                }
+                if (requested.addAndGet(-emitted) == 0) {
+                    return;
+                }
+                emitted = 0;
+            }
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+        }
+
+        private void complete() {
+            cancelled = true;
+            subscriber.onComplete();
+        }
+    }
+
+    @TargetApi(Build.VERSION_CODES.R)
+    private static final class ToFlowSubscriber<T> implements Subscriber<T> {
+        private final Flow.Subscriber<? super T> downstream;
+
+        ToFlowSubscriber(Flow.Subscriber<? super T> downstream) {
+            this.downstream = downstream;
+        }
+
+        @Override
+        public void onSubscribe(Subscription subscription) {
+            downstream.onSubscribe(new Flow.Subscription() {
+                @Override
+                public void request(long n) {
+                    subscription.request(n);
+                }
+
+                @Override
+                public void cancel() {
+                    subscription.cancel();
+                }
+            });
+        }
+
+        @Override
+        public void onNext(T item) {
+            downstream.onNext(item);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            downstream.onError(throwable);
+        }
+
+        @Override
+        public void onComplete() {
+            downstream.onComplete();
+        }
+    }
+
+    @TargetApi(Build.VERSION_CODES.R)
+    private static final class FromFlowSubscriber<T> implements Flow.Subscriber<T> {
+        private final Subscriber<? super T> downstream;
+
+        FromFlowSubscriber(Subscriber<? super T> downstream) {
+            this.downstream = downstream;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            downstream.onSubscribe(new Subscription() {
+                @Override
+                public void request(long n) {
+                    subscription.request(n);
+                }
+
+                @Override
+                public void cancel() {
+                    subscription.cancel();
+                }
+            });
+        }
+
+        @Override
+        public void onNext(T item) {
+            downstream.onNext(item);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            downstream.onError(throwable);
+        }
+
+        @Override
+        public void onComplete() {
+            downstream.onComplete();
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package com.qmdeve.liteimagecompressor;
+
+/**
+ * Per-stage cost of one compression. Timings are in nanoseconds; stages that did not run
+ * (for example decode on a cache hit) report 0.
+ */
+public class CompressMetrics {
+    private final long totalNanos;
+    private final long decodeNanos;
+    private final long encodeNanos;
+    private final long resultDecodeNanos;
+    private final long ioNanos;
+    private final long bytesRead;
+    private final long bytesWritten;
+    private final long bytesAllocated;
+    private final int decodedWidth;
+    private final int decodedHeight;
+    private final int encodePasses;
+
+    CompressMetrics(long totalNanos, long decodeNanos, long encodeNanos, long resultDecodeNanos, long ioNanos,
+                    long bytesRead, long bytesWritten, long bytesAllocated,
+                    int decodedWidth, int decodedHeight, int encodePasses) {
+        this.totalNanos = totalNanos;
+        this.decodeNanos = decodeNanos;
+        this.encodeNanos = encodeNanos;
+        this.resultDecodeNanos = resultDecodeNanos;
+        this.ioNanos = ioNanos;
+        this.bytesRead = bytesRead;
+        this.bytesWritten = bytesWritten;
+        this.bytesAllocated = bytesAllocated;
+        this.decodedWidth = decodedWidth;
+        this.decodedHeight = decodedHeight;
+        this.encodePasses = encodePasses;
+    }
+
+    public long getTotalNanos() { return totalNanos; }
+    public long getDecodeNanos() { return decodeNanos; }
+    public long getEncodeNanos() { return encodeNanos; }
+    /**
+     * Time spent decoding the compressed output back into the result Bitmap.
+     */
+    public long getResultDecodeNanos() { return resultDecodeNanos; }
+    /**
+     * Time spent copying input or writing output, outside of decode and encode.
+     */
+    public long getIoNanos() { return ioNanos; }
+    public long getBytesRead() { return bytesRead; }
+    public long getBytesWritten() { return bytesWritten; }
+    /**
+     * Approximate bytes allocated for bitmaps and encode buffers.
+     */
+    public long getBytesAllocated() { return bytesAllocated; }
+    public int getDecodedWidth() { return decodedWidth; }
+    public int getDecodedHeight() { return decodedHeight; }
+    public int getEncodePasses() { return encodePasses; }
+}
@@ -2,6 +2,8 @@ package com.qmdeve.liteimagecompressor;
 
 import android.graphics.Bitmap;
 
+import java.io.File;
+
 public class CompressResult {
     private boolean success;
     private Bitmap compressedBitmap;
@@ -9,6 +11,12 @@ public class CompressResult {
     private long originalSize;
     private long compressedSize;
     private boolean wasCompressed;
+    private File outputFile;
+    private File sourceFile;
+    private byte[] data;
+    private BitmapLoader bitmapLoader;
+    private CompressMetrics metrics;
+    private Bitmap.CompressFormat format;
 
     private CompressResult(Builder builder) {
         this.success = builder.success;
@@ -17,14 +25,80 @@ public class CompressResult {
         this.originalSize = builder.originalSize;
         this.compressedSize = builder.compressedSize;
         this.wasCompressed = builder.wasCompressed;
+        this.outputFile = builder.outputFile;
+        this.sourceFile = builder.sourceFile;
+        this.data = builder.data;
+        this.bitmapLoader = builder.bitmapLoader;
+        this.metrics = builder.metrics;
+        this.format = builder.format;
     }
 
     public boolean isSuccess() { return success; }
-    public Bitmap getCompressedBitmap() { return compressedBitmap; }
+
+    /**
+     * In lazy-decode mode an uncompressed result is decoded on the first call, so this may
+     * block and may return null if the source cannot be decoded.
+     */
+    public synchronized Bitmap getCompressedBitmap() {
+        if (compressedBitmap == null && bitmapLoader != null) {
+            BitmapLoader loader = bitmapLoader;
+            bitmapLoader = null;
+            compressedBitmap = loader.load();
+        }
+        return compressedBitmap;
+    }
+
+    /**
+     * The bitmap if one is already decoded, without running the lazy loader.
+     */
+    synchronized Bitmap peekBitmap() {
+        return compressedBitmap;
+    }
+
     public String getErrorMessage() { return errorMessage; }
     public long getOriginalSize() { return originalSize; }
     public long getCompressedSize() { return compressedSize; }
     public boolean wasCompressed() { return wasCompressed; }
+    /**
+     * Destination written by compressToFile, null for Bitmap results.
+     */
+    public File getOutputFile() { return outputFile; }
+    /**
+     * Input file returned by reference when it was already under maxSize in lazy-decode mode.
+     */
+    public File getSourceFile() { return sourceFile; }
+    /**
+     * Encoded bytes behind this result when no Bitmap was decoded up front: the input returned
+     * by reference in lazy-decode mode, or the compressed output served from a ResultCache.
+     */
+    public byte[] getData() { return data; }
+
+    /**
+     * Per-stage timings and byte counts of the compression that produced this result.
+     */
+    public CompressMetrics getMetrics() { return metrics; }
+
+    /**
+     * Format of the encoded output, picked per image when autoFormat is set. Null when the
+     * original was returned unchanged.
+     */
+    public Bitmap.CompressFormat getFormat() { return format; }
+
+    public synchronized Builder toBuilder() {
+        return new Builder()
+                .setSuccess(success)
+                .setCompressedBitmap(compressedBitmap)
+                .setBitmapLoader(bitmapLoader)
+                .setSourceFile(sourceFile)
+                .setData(data)
+                .setErrorMessage(errorMessage)
+                .setOriginalSize(originalSize)
+                .setCompressedSize(compressedSize)
+                .setWasCompressed(wasCompressed)
+                .setOutputFile(outputFile)
+                .setMetrics(metrics)
+                .setFormat(format);
+    }
 
     public static class Builder {
         private boolean success;
@@ -33,6 +107,12 @@ public class CompressResult {
         private long originalSize;
         private long compressedSize;
         private boolean wasCompressed;
+        private File outputFile;
+        private File sourceFile;
+        private byte[] data;
+        private BitmapLoader bitmapLoader;
+        private CompressMetrics metrics;
+        private Bitmap.CompressFormat format;
 
         public Builder setSuccess(boolean success) {
             this.success = success;
@@ -64,6 +144,36 @@ public class CompressResult {
             return this;
         }
 
+        public Builder setOutputFile(File outputFile) {
+            this.outputFile = outputFile;
+            return this;
+        }
+
+        public Builder setSourceFile(File sourceFile) {
+            this.sourceFile = sourceFile;
+            return this;
+        }
+
+        public Builder setData(byte[] data) {
+            this.data = data;
+            return this;
+        }
+
+        public Builder setMetrics(CompressMetrics metrics) {
+            this.metrics = metrics;
+            return this;
+        }
+
+        public Builder setFormat(Bitmap.CompressFormat format) {
+            this.format = format;
+            return this;
+        }
+
+        Builder setBitmapLoader(BitmapLoader bitmapLoader) {
+            this.bitmapLoader = bitmapLoader;
+            return this;
+        }
+
         public CompressResult build() {
             return new CompressResult(this);
         }
@@ -72,4 +182,8 @@ public class CompressResult {
     public static Builder builder() {
         return new Builder();
     }
+
+    interface BitmapLoader {
+        Bitmap load();
+    }
 }
\ No newline at end of file
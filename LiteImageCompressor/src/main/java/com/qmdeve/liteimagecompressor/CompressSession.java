@@ -0,0 +1,99 @@
+package com.qmdeve.liteimagecompressor;
+
+import android.graphics.Bitmap;
+
+import com.qmdeve.liteimagecompressor.codec.EncodeBuffer;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Future;
+
+/**
+ * State of a single compression as it moves through the pipeline: the cancellation signal
+ * plus per-stage timings and byte counts that end up in {@link CompressMetrics}.
+ * Confined to the thread running the pipeline.
+ */
+final class CompressSession {
+    private final Future<?> task;
+    private final long startNanos = System.nanoTime();
+    private long decodeNanos;
+    private long encodeNanos;
+    private long resultDecodeNanos;
+    private long ioNanos;
+    private long bytesRead;
+    private long bytesWritten;
+    private long bytesAllocated;
+    private int decodedWidth;
+    private int decodedHeight;
+    private int encodePasses;
+    private int pressureSampleFactor = 1;
+
+    CompressSession(Future<?> task) {
+        this.task = task;
+    }
+
+    void checkCancelled() {
+        if (task != null && task.isCancelled()) {
+            throw new CancellationException("Compression cancelled");
+        }
+    }
+
+    void recordDecode(long start, Bitmap bitmap, long sourceBytes) {
+        decodeNanos += System.nanoTime() - start;
+        bytesRead += sourceBytes;
+        if (bitmap != null) {
+            decodedWidth = bitmap.getWidth();
+            decodedHeight = bitmap.getHeight();
+            bytesAllocated += bitmap.getAllocationByteCount();
+        }
+    }
+
+    /**
+     * Extra sampling the decoder applied for memory pressure, 1 when none.
+     */
+    void recordPressureSample(int factor) {
+        pressureSampleFactor = Math.max(pressureSampleFactor, factor);
+    }
+
+    /**
+     * True once a decode in this session came out smaller than the config asks for because
+     * of memory pressure; such results must not be cached under the config's key.
+     */
+    boolean isPressureSampled() {
+        return pressureSampleFactor > 1;
+    }
+
+    void recordEncode(long start, TargetSizeEncoder.Outcome outcome) {
+        encodeNanos += System.nanoTime() - start;
+        encodePasses += outcome.passes;
+        bytesAllocated += outcome.allocatedBytes;
+    }
+
+    void recordEncode(long start, EncodeBuffer buffer) {
+        encodeNanos += System.nanoTime() - start;
+        encodePasses++;
+        bytesAllocated += buffer.buffer().length;
+    }
+
+    void recordResultDecode(long start, Bitmap bitmap) {
+        resultDecodeNanos += System.nanoTime() - start;
+        if (bitmap != null) {
+            bytesAllocated += bitmap.getAllocationByteCount();
+        }
+    }
+
+    void recordRead(long start, long bytes, long allocated) {
+        ioNanos += System.nanoTime() - start;
+        bytesRead += bytes;
+        bytesAllocated += allocated;
+    }
+
+    void recordWrite(long start, long bytes) {
+        ioNanos += System.nanoTime() - start;
+        bytesWritten += bytes;
+    }
+
+    CompressMetrics toMetrics() {
+        return new CompressMetrics(System.nanoTime() - startNanos, decodeNanos, encodeNanos, resultDecodeNanos,
+                ioNanos, bytesRead, bytesWritten, bytesAllocated, decodedWidth, decodedHeight, encodePasses);
+    }
+}
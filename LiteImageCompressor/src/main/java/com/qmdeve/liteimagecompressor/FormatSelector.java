@@ -0,0 +1,150 @@
+package com.qmdeve.liteimagecompressor;
+
+import android.graphics.Bitmap;
+import android.os.Build;
+
+import com.qmdeve.liteimagecompressor.codec.EncodeBuffer;
+
+/**
+ * Chooses the output format for {@link CompressConfig#isAutoFormat()} from a grid of sampled
+ * pixels. Few colours means graphics that compress best losslessly; many colours with few flat
+ * or hard-edged neighbours means a photo. Anything in between, such as a screenshot with a
+ * photo in it, is settled by encoding a crop in each candidate format and keeping the smallest.
+ */
+final class FormatSelector {
+    private static final int SAMPLE_SIDE = 128;
+    private static final int PALETTE_LIMIT = 256;
+    private static final int CROP_SIDE = 256;
+    private static final int SHARP_EDGE = 48;
+    private static final float PHOTO_MAX_FLAT = 0.3f;
+    private static final float PHOTO_MAX_SHARP = 0.1f;
+
+    private FormatSelector() {
+    }
+
+    static Bitmap.CompressFormat select(Bitmap bitmap, int quality) {
+        int width = bitmap.getWidth();
+        int height = bitmap.getHeight();
+        if (width < 2 || height < 2) {
+            return lossless();
+        }
+
+        int stepX = Math.max(1, width / SAMPLE_SIDE);
+        int stepY = Math.max(1, height / SAMPLE_SIDE);
+        int[] rows = new int[width * 2];
+        int[] palette = new int[PALETTE_LIMIT * 4];
+        int colors = 0;
+        boolean paletteHasZero = false;
+        boolean alpha = false;
+        int samples = 0;
+        int flat = 0;
+        int sharp = 0;
+
+        for (int y = 0; y + 1 < height; y += stepY) {
+            bitmap.getPixels(rows, 0, width, 0, y, width, 2);
+            for (int x = 0; x + 1 < width; x += stepX) {
+                int pixel = rows[x];
+                alpha |= (pixel >>> 24) != 0xFF;
+                if (colors <= PALETTE_LIMIT) {
+                    if (pixel == 0) {
+                        if (!paletteHasZero) {
+                            paletteHasZero = true;
+                            colors++;
+                        }
+                    } else if (addColor(palette, pixel)) {
+                        colors++;
+                    }
+                }
+
+                int luma = luma(pixel);
+                int step = Math.max(Math.abs(luma - luma(rows[x + 1])), Math.abs(luma - luma(rows[width + x])));
+                if (step == 0) {
+                    flat++;
+                } else if (step >= SHARP_EDGE) {
+                    sharp++;
+                }
+                samples++;
+            }
+        }
+        alpha &= bitmap.hasAlpha();
+
+        if (colors <= PALETTE_LIMIT) {
+            return lossless();
+        }
+        if (flat < samples * PHOTO_MAX_FLAT && sharp < samples * PHOTO_MAX_SHARP) {
+            return alpha ? lossyWithAlpha() : Bitmap.CompressFormat.JPEG;
+        }
+        return smallestCrop(bitmap, quality, alpha ? lossyWithAlpha() : Bitmap.CompressFormat.JPEG, lossless());
+    }
+
+    /**
+     * Format matching an encoded header, for outputs whose format was not recorded.
+     */
+    static Bitmap.CompressFormat formatOf(ImageHeader header) {
+        if (ImageHeader.MIME_JPEG.equals(header.mimeType)) {
+            return Bitmap.CompressFormat.JPEG;
+        }
+        if (ImageHeader.MIME_PNG.equals(header.mimeType)) {
+            return Bitmap.CompressFormat.PNG;
+        }
+        if (ImageHeader.MIME_WEBP.equals(header.mimeType)) {
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.R) {
+                return header.lossless ? lossless() : lossyWithAlpha();
+            }
+            return Bitmap.CompressFormat.WEBP;
+        }
+        return null;
+    }
+
+    private static Bitmap.CompressFormat smallestCrop(Bitmap bitmap, int quality, Bitmap.CompressFormat lossy,
+                                                      Bitmap.CompressFormat lossless) {
+        int cropWidth = Math.min(CROP_SIDE, bitmap.getWidth());
+        int cropHeight = Math.min(CROP_SIDE, bitmap.getHeight());
+        Bitmap crop = cropWidth == bitmap.getWidth() && cropHeight == bitmap.getHeight() ? bitmap
+                : Bitmap.createBitmap(bitmap, (bitmap.getWidth() - cropWidth) / 2,
+                (bitmap.getHeight() - cropHeight) / 2, cropWidth, cropHeight);
+        try {
+            EncodeBuffer buffer = new EncodeBuffer(cropWidth * cropHeight);
+            crop.compress(lossy, quality, buffer);
+            long lossySize = buffer.size();
+            buffer.reset();
+            crop.compress(lossless, 100, buffer);
+            return buffer.size() <= lossySize ? lossless : lossy;
+        } finally {
+            if (crop != bitmap) {
+                crop.recycle();
+            }
+        }
+    }
+
+    // WEBP_LOSSY/WEBP_LOSSLESS only exist from API 30; before that WEBP below quality 100 is lossy
+    private static Bitmap.CompressFormat lossless() {
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.R
+                ? Bitmap.CompressFormat.valueOf("WEBP_LOSSLESS") : Bitmap.CompressFormat.PNG;
+    }
+
+    private static Bitmap.CompressFormat lossyWithAlpha() {
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.R
+                ? Bitmap.CompressFormat.valueOf("WEBP_LOSSY") : Bitmap.CompressFormat.WEBP;
+    }
+
+    /**
+     * Adds {@code color} (non-zero) to an open-addressing set; false when it was already there.
+     */
+    private static boolean addColor(int[] palette, int color) {
+        int mask = palette.length - 1;
+        int slot = (color * 0x9E3779B9) >>> 22 & mask;
+        while (palette[slot] != 0) {
+            if (palette[slot] == color) {
+                return false;
+            }
+            slot = (slot + 1) & mask;
+        }
+        palette[slot] = color;
+        return true;
+    }
+
+    private static int luma(int pixel) {
+        return (77 * ((pixel >> 16) & 0xFF) + 150 * ((pixel >> 8) & 0xFF) + 29 * (pixel & 0xFF)) >> 8;
+    }
+}
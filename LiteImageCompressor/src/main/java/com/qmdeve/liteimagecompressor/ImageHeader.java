@@ -0,0 +1,428 @@
+package com.qmdeve.liteimagecompressor;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+/**
+ * Format and dimensions read from the first bytes of an encoded image (JPEG SOF, PNG IHDR,
+ * WebP VP8/VP8L/VP8X, GIF and BMP headers) without decoding any pixels, plus the EXIF
+ * orientation and estimated quality of JPEGs. Inputs with an
+ * unknown signature or a broken header come back invalid so they can be rejected before
+ * a decode is attempted.
+ */
+final class ImageHeader {
+    static final String MIME_JPEG = "image/jpeg";
+    static final String MIME_PNG = "image/png";
+    static final String MIME_WEBP = "image/webp";
+    static final String MIME_GIF = "image/gif";
+    static final String MIME_BMP = "image/bmp";
+    static final String MIME_HEIF = "image/heif";
+
+    // IJG luminance table at quality 50, the reference libjpeg scales by quality
+    private static final int[] STANDARD_LUMA_TABLE = {
+            16, 11, 10, 16, 24, 40, 51, 61,
+            12, 12, 14, 19, 26, 58, 60, 55,
+            14, 13, 16, 24, 40, 57, 69, 56,
+            14, 17, 22, 29, 51, 87, 80, 62,
+            18, 22, 37, 56, 68, 109, 103, 77,
+            24, 35, 55, 64, 81, 104, 113, 92,
+            49, 64, 78, 87, 103, 121, 120, 101,
+            72, 92, 95, 98, 112, 100, 103, 99
+    };
+    private static final int STANDARD_LUMA_SUM = sum(STANDARD_LUMA_TABLE);
+    // Covers every header parsed here except JPEGs with large APPn segments before the frame
+    private static final int PREFIX_SIZE = 64 * 1024;
+
+    /**
+     * Mime type, or null for signatures the platform may decode but that are not parsed here.
+     */
+    final String mimeType;
+    /**
+     * Pixel size, 0 when the header carries none that is read here.
+     */
+    final int width;
+    final int height;
+    final boolean hasAlpha;
+    final boolean lossless;
+    /**
+     * EXIF orientation, 1 (normal) through 8, as stored; width and height are before it is applied.
+     */
+    final int orientation;
+    /**
+     * JPEG quality, 1 to 100 on the libjpeg scale, estimated from the luminance quantization
+     * table; 0 when unknown or not a JPEG.
+     */
+    final int quality;
+    /**
+     * Why the input was rejected, null when it is valid.
+     */
+    final String error;
+
+    private ImageHeader(String mimeType, int width, int height, boolean hasAlpha, boolean lossless,
+                        int orientation, int quality, String error) {
+        this.mimeType = mimeType;
+        this.width = width;
+        this.height = height;
+        this.hasAlpha = hasAlpha;
+        this.lossless = lossless;
+        this.orientation = orientation;
+        this.quality = quality;
+        this.error = error;
+    }
+
+    boolean isValid() {
+        return error == null;
+    }
+
+    boolean hasDimensions() {
+        return width > 0 && height > 0;
+    }
+
+    /**
+     * Orientations 5 to 8 rotate by 90 or 270 degrees, swapping width and height.
+     */
+    static boolean isTransposed(int orientation) {
+        return orientation >= 5 && orientation <= 8;
+    }
+
+    static ImageHeader read(File file) throws IOException {
+        try (FileInputStream in = new FileInputStream(file)) {
+            return read(in.getChannel());
+        }
+    }
+
+    /**
+     * Parses the header from the first {@link #PREFIX_SIZE} bytes, read at absolute positions
+     * so the channel position is left alone. A JPEG whose frame header lies past them is
+     * walked segment by segment with small reads instead of reading the whole file.
+     */
+    static ImageHeader read(FileChannel channel) throws IOException {
+        long size = channel.size();
+        ByteBuffer prefix = readAt(channel, 0, (int) Math.min(size, PREFIX_SIZE));
+        if (size > prefix.limit() && prefix.limit() >= 2 && u8(prefix, 0) == 0xFF && u8(prefix, 1) == 0xD8) {
+            return parseJpeg(new ChannelBytes(channel, size, prefix));
+        }
+        return parse(prefix);
+    }
+
+    static ImageHeader parse(byte[] data, int length) {
+        return parse(ByteBuffer.wrap(data, 0, length).slice());
+    }
+
+    static ImageHeader parse(ByteBuffer buffer) {
+        ByteBuffer data = buffer.duplicate().order(ByteOrder.BIG_ENDIAN);
+        int limit = data.limit();
+        if (limit < 4) {
+            return invalid("File is too small to be an image");
+        }
+
+        if (u8(data, 0) == 0xFF && u8(data, 1) == 0xD8) {
+            try {
+                return parseJpeg(new BufferBytes(data));
+            } catch (IOException e) {
+                // In-memory bytes never fail to read
+                throw new IllegalStateException(e);
+            }
+        }
+        if (limit >= 8 && data.getLong(0) == 0x89504E470D0A1A0AL) {
+            return parsePng(data);
+        }
+        if (limit >= 12 && data.getInt(0) == 0x52494646 && data.getInt(8) == 0x57454250) {
+            return parseWebp(data);
+        }
+        if (limit >= 10 && data.getInt(0) == 0x47494638) {
+            data.order(ByteOrder.LITTLE_ENDIAN);
+            return dimensions(MIME_GIF, data.getShort(6) & 0xFFFF, data.getShort(8) & 0xFFFF, true, false);
+        }
+        if (u8(data, 0) == 'B' && u8(data, 1) == 'M') {
+            if (limit < 30) {
+                return invalid("Truncated BMP header");
+            }
+            data.order(ByteOrder.LITTLE_ENDIAN);
+            boolean alpha = (data.getShort(28) & 0xFFFF) == 32;
+            return dimensions(MIME_BMP, data.getInt(18), Math.abs(data.getInt(22)), alpha, false);
+        }
+        if (limit >= 12 && data.getInt(4) == 0x66747970) {
+            return new ImageHeader(MIME_HEIF, 0, 0, true, false, 1, 0, null);
+        }
+        int magic = data.getInt(0);
+        if ((magic & 0xFFFF0000) == 0 || magic == 0x49492A00 || magic == 0x4D4D002A) {
+            // ICO and WBMP start with zero bytes, DNG is TIFF: leave them to the platform decoder
+            return new ImageHeader(null, 0, 0, true, false, 1, 0, null);
+        }
+        return invalid("Unsupported image format");
+    }
+
+    private static ImageHeader parseJpeg(Bytes data) throws IOException {
+        long limit = data.size();
+        long pos = 2;
+        int orientation = 1;
+        int quality = 0;
+        while (pos + 4 <= limit) {
+            ByteBuffer head = data.window(pos, 4);
+            if (u8(head, 0) != 0xFF) {
+                return invalid("Corrupt JPEG header");
+            }
+            int marker = u8(head, 1);
+            if (marker == 0xFF) {
+                pos++;
+                continue;
+            }
+            if (marker == 0x01 || (marker >= 0xD0 && marker <= 0xD8)) {
+                pos += 2;
+                continue;
+            }
+            if (marker == 0xD9 || marker == 0xDA) {
+                return invalid("JPEG has no frame header");
+            }
+            int length = head.getShort(2) & 0xFFFF;
+            if (length < 2) {
+                return invalid("Corrupt JPEG header");
+            }
+            if (marker == 0xE1) {
+                ByteBuffer segment = data.window(pos, 2 + length);
+                orientation = readExifOrientation(segment, 4, segment.limit(), orientation);
+            } else if (marker == 0xDB) {
+                ByteBuffer segment = data.window(pos, 2 + length);
+                quality = readQuality(segment, 4, segment.limit(), quality);
+            } else if (isStartOfFrame(marker)) {
+                ByteBuffer frame = data.window(pos, 9);
+                if (frame.limit() < 9) {
+                    break;
+                }
+                return dimensions(MIME_JPEG, frame.getShort(7) & 0xFFFF, frame.getShort(5) & 0xFFFF,
+                        false, false, orientation, quality);
+            }
+            pos += 2 + length;
+        }
+        return invalid("Truncated JPEG header");
+    }
+
+    /**
+     * Reads tag 0x0112 from IFD0 of an APP1 segment spanning [start, end), returning
+     * {@code fallback} when the segment is not Exif or the tag is missing or out of range.
+     */
+    private static int readExifOrientation(ByteBuffer data, int start, int end, int fallback) {
+        if (end - start < 14 || data.getInt(start) != 0x45786966 || data.getShort(start + 4) != 0) {
+            return fallback;
+        }
+        int tiff = start + 6;
+        ByteBuffer exif = data.duplicate();
+        if (data.getShort(tiff) == 0x4949) {
+            exif.order(ByteOrder.LITTLE_ENDIAN);
+        } else if (data.getShort(tiff) != 0x4D4D) {
+            return fallback;
+        }
+        long ifd = exif.getInt(tiff + 4) & 0xFFFFFFFFL;
+        if (ifd < 8 || tiff + ifd + 2 > end) {
+            return fallback;
+        }
+        int entry = (int) (tiff + ifd);
+        int count = exif.getShort(entry) & 0xFFFF;
+        entry += 2;
+        for (int i = 0; i < count && entry + 12 <= end; i++, entry += 12) {
+            if ((exif.getShort(entry) & 0xFFFF) == 0x0112) {
+                int value = exif.getShort(entry + 8) & 0xFFFF;
+                return value >= 1 && value <= 8 ? value : fallback;
+            }
+        }
+        return fallback;
+    }
+
+    /**
+     * Estimates quality from table 0 of a DQT segment spanning [start, end) by inverting the
+     * libjpeg scaling of {@link #STANDARD_LUMA_TABLE}; returns {@code fallback} when the segment
+     * does not hold table 0. Comparing sums keeps it independent of the zigzag order.
+     */
+    private static int readQuality(ByteBuffer data, int start, int end, int fallback) {
+        int pos = start;
+        while (pos < end) {
+            int info = u8(data, pos);
+            boolean wide = (info >> 4) != 0;
+            int size = wide ? 128 : 64;
+            if (pos + 1 + size > end) {
+                return fallback;
+            }
+            if ((info & 0x0F) == 0) {
+                long total = 0;
+                for (int i = 0; i < 64; i++) {
+                    total += wide ? data.getShort(pos + 1 + i * 2) & 0xFFFF : u8(data, pos + 1 + i);
+                }
+                double scale = total * 100.0 / STANDARD_LUMA_SUM;
+                int quality = (int) Math.round(scale <= 100 ? (200 - scale) / 2 : 5000 / scale);
+                return Math.max(1, Math.min(100, quality));
+            }
+            pos += 1 + size;
+        }
+        return fallback;
+    }
+
+    private static int sum(int[] values) {
+        int total = 0;
+        for (int value : values) {
+            total += value;
+        }
+        return total;
+    }
+
+    private static boolean isStartOfFrame(int marker) {
+        return marker >= 0xC0 && marker <= 0xCF && marker != 0xC4 && marker != 0xC8 && marker != 0xCC;
+    }
+
+    private static ImageHeader parsePng(ByteBuffer data) {
+        int limit = data.limit();
+        if (limit < 33) {
+            return invalid("Truncated PNG header");
+        }
+        if (data.getInt(12) != 0x49484452) {
+            return invalid("PNG has no IHDR chunk");
+        }
+        int width = data.getInt(16);
+        int height = data.getInt(20);
+        int colorType = u8(data, 25);
+        boolean alpha = colorType == 4 || colorType == 6;
+
+        // A tRNS chunk before the image data also makes palette and grey images transparent
+        int pos = 33;
+        while (!alpha && pos + 8 <= limit) {
+            int length = data.getInt(pos);
+            int type = data.getInt(pos + 4);
+            if (type == 0x49444154 || type == 0x49454E44 || length < 0 || length > limit) {
+                break;
+            }
+            alpha = type == 0x74524E53;
+            pos += 12 + length;
+        }
+        return dimensions(MIME_PNG, width, height, alpha, true);
+    }
+
+    private static ImageHeader parseWebp(ByteBuffer data) {
+        int limit = data.limit();
+        if (limit < 30) {
+            return invalid("Truncated WebP header");
+        }
+        int chunk = data.getInt(12);
+        data.order(ByteOrder.LITTLE_ENDIAN);
+        switch (chunk) {
+            case 0x56503820: // "VP8 "
+                if (u8(data, 23) != 0x9D || u8(data, 24) != 0x01 || u8(data, 25) != 0x2A) {
+                    return invalid("Corrupt WebP header");
+                }
+                return dimensions(MIME_WEBP, data.getShort(26) & 0x3FFF, data.getShort(28) & 0x3FFF, false, false);
+            case 0x5650384C: { // "VP8L"
+                if (u8(data, 20) != 0x2F) {
+                    return invalid("Corrupt WebP header");
+                }
+                int bits = data.getInt(21);
+                return dimensions(MIME_WEBP, (bits & 0x3FFF) + 1, ((bits >>> 14) & 0x3FFF) + 1,
+                        ((bits >>> 28) & 1) != 0, true);
+            }
+            case 0x56503858: { // "VP8X"
+                boolean alpha = (u8(data, 20) & 0x10) != 0;
+                return dimensions(MIME_WEBP, u24(data, 24) + 1, u24(data, 27) + 1, alpha, false);
+            }
+            default:
+                return invalid("Corrupt WebP header");
+        }
+    }
+
+    private static ImageHeader dimensions(String mimeType, int width, int height, boolean hasAlpha,
+                                          boolean lossless) {
+        return dimensions(mimeType, width, height, hasAlpha, lossless, 1, 0);
+    }
+
+    private static ImageHeader dimensions(String mimeType, int width, int height, boolean hasAlpha,
+                                          boolean lossless, int orientation, int quality) {
+        if (width <= 0 || height <= 0) {
+            return invalid("Invalid image dimensions");
+        }
+        return new ImageHeader(mimeType, width, height, hasAlpha, lossless, orientation, quality, null);
+    }
+
+    private static ImageHeader invalid(String error) {
+        return new ImageHeader(null, 0, 0, false, false, 1, 0, error);
+    }
+
+    private static ByteBuffer readAt(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                break;
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * Random access to the encoded bytes for the JPEG segment walk. A window is a big-endian
+     * buffer whose index 0 is {@code position}; it comes back short at the end of the data.
+     */
+    private interface Bytes {
+        long size();
+
+        ByteBuffer window(long position, int length) throws IOException;
+    }
+
+    private static final class BufferBytes implements Bytes {
+        private final ByteBuffer data;
+
+        BufferBytes(ByteBuffer data) {
+            this.data = data;
+        }
+
+        @Override
+        public long size() {
+            return data.limit();
+        }
+
+        @Override
+        public ByteBuffer window(long position, int length) {
+            ByteBuffer window = data.duplicate();
+            window.position((int) position);
+            window.limit((int) Math.min(data.limit(), position + length));
+            return window.slice();
+        }
+    }
+
+    /**
+     * Serves windows inside the prefix already read from it, and reads the rest from the
+     * channel.
+     */
+    private static final class ChannelBytes implements Bytes {
+        private final FileChannel channel;
+        private final long size;
+        private final BufferBytes prefix;
+
+        ChannelBytes(FileChannel channel, long size, ByteBuffer prefix) {
+            this.channel = channel;
+            this.size = size;
+            this.prefix = new BufferBytes(prefix);
+        }
+
+        @Override
+        public long size() {
+            return size;
+        }
+
+        @Override
+        public ByteBuffer window(long position, int length) throws IOException {
+            if (position + length <= prefix.size()) {
+                return prefix.window(position, length);
+            }
+            return readAt(channel, position, (int) Math.min(length, size - position));
+        }
+    }
+
+    private static int u8(ByteBuffer data, int index) {
+        return data.get(index) & 0xFF;
+    }
+
+    private static int u24(ByteBuffer data, int index) {
+        return u8(data, index) | (u8(data, index + 1) << 8) | (u8(data, index + 2) << 16);
+    }
+}
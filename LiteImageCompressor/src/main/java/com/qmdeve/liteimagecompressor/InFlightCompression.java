@@ -0,0 +1,188 @@
+package com.qmdeve.liteimagecompressor;
+
+import android.graphics.Bitmap;
+
+import java.io.File;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+
+/**
+ * One compression running on an executor, shared by every caller of one compressor that asked
+ * for the same source and config while it was in flight. Each subscriber claims its own copy
+ * of the result, so releasing one caller's Bitmap never affects another. The work is
+ * cancelled only once every subscriber has cancelled.
+ */
+final class InFlightCompression {
+
+    interface Stage {
+        CompressResult run(Future<?> task) throws Exception;
+    }
+
+    /**
+     * Completes with the pipeline result; its cancelled state is the pipeline's cancellation signal.
+     */
+    final CompletableFuture<CompressResult> result = new CompletableFuture<>();
+    private final ConcurrentHashMap<Key, InFlightCompression> requests;
+    private final Key key;
+    private int subscribers;
+    private boolean closed;
+
+    private InFlightCompression(ConcurrentHashMap<Key, InFlightCompression> requests, Key key) {
+        this.requests = requests;
+        this.key = key;
+    }
+
+    /**
+     * Subscribes to the in-flight compression for {@code key} in {@code requests}, starting
+     * {@code work} on {@code executor} if there is none. A null key never shares.
+     */
+    static InFlightCompression join(ConcurrentHashMap<Key, InFlightCompression> requests, Key key,
+                                    Executor executor, Stage work) {
+        while (true) {
+            InFlightCompression existing = key != null ? requests.get(key) : null;
+            if (existing == null) {
+                InFlightCompression created = new InFlightCompression(requests, key);
+                created.subscribe();
+                if (key == null || (existing = requests.putIfAbsent(key, created)) == null) {
+                    created.start(executor, work);
+                    return created;
+                }
+            }
+            if (existing.subscribe()) {
+                return existing;
+            }
+            requests.remove(key, existing);
+        }
+    }
+
+    /**
+     * This subscriber's result: a private copy while other subscribers are still to claim
+     * theirs, the shared one for the last. Each subscriber settles exactly once, through
+     * either this or {@link #unsubscribe}, so copies are only made for callers that take them
+     * and the shared result is handed out only after every copy has been made.
+     */
+    synchronized CompressResult claim(CompressResult shared) {
+        return --subscribers > 0 ? copyOf(shared) : shared;
+    }
+
+    /**
+     * Frees a claimed copy whose caller cancelled before receiving it. The shared result is
+     * left alone: its bitmap may be the caller's own source.
+     */
+    static void discard(CompressResult claimed, CompressResult shared) {
+        Bitmap bitmap = claimed != shared ? claimed.peekBitmap() : null;
+        if (bitmap != null) {
+            bitmap.recycle();
+        }
+    }
+
+    synchronized void unsubscribe() {
+        if (--subscribers == 0) {
+            detach();
+            result.cancel(false);
+        }
+    }
+
+    private synchronized boolean subscribe() {
+        if (closed || result.isDone()) {
+            return false;
+        }
+        subscribers++;
+        return true;
+    }
+
+    private void start(Executor executor, Stage work) {
+        try {
+            executor.execute(() -> run(work));
+        } catch (RuntimeException e) {
+            detach();
+            result.completeExceptionally(e);
+        }
+    }
+
+    private void run(Stage work) {
+        if (result.isDone()) {
+            return;
+        }
+        try {
+            CompressResult value = work.run(result);
+            detach();
+            close();
+            result.complete(value);
+        } catch (Throwable t) {
+            detach();
+            result.completeExceptionally(t);
+        }
+    }
+
+    private void detach() {
+        if (key != null) {
+            requests.remove(key, this);
+        }
+    }
+
+    private synchronized void close() {
+        closed = true;
+    }
+
+    private static CompressResult copyOf(CompressResult value) {
+        CompressResult.Builder builder = value.toBuilder();
+        if (value.getData() != null) {
+            builder.setData(value.getData().clone());
+        }
+        Bitmap bitmap = value.peekBitmap();
+        if (bitmap != null) {
+            Bitmap copy = bitmap.copy(bitmap.getConfig(), bitmap.isMutable());
+            if (copy == null) {
+                return CompressResult.builder()
+                        .setSuccess(false)
+                        .setErrorMessage("Failed to copy shared result bitmap")
+                        .build();
+            }
+            builder.setCompressedBitmap(copy);
+        }
+        return builder.build();
+    }
+
+    static Key fileKey(File file, String configKey) {
+        return new Key("file:" + file.getAbsolutePath() + ':' + file.length() + ':' + file.lastModified(), configKey);
+    }
+
+    /**
+     * Key for in-memory sources (byte[] or Bitmap), matched by instance identity.
+     */
+    static Key instanceKey(Object source, String configKey) {
+        return new Key(source, configKey);
+    }
+
+    static final class Key {
+        private final Object source;
+        private final String config;
+
+        private Key(Object source, String config) {
+            this.source = source;
+            this.config = config;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            boolean sameSource = source instanceof String ? source.equals(other.source) : source == other.source;
+            return sameSource && config.equals(other.config);
+        }
+
+        @Override
+        public int hashCode() {
+            int sourceHash = source instanceof String ? source.hashCode() : System.identityHashCode(source);
+            return 31 * sourceHash + config.hashCode();
+        }
+    }
+}
@@ -1,64 +1,469 @@
 package com.qmdeve.liteimagecompressor;
 
+import android.content.ContentResolver;
 import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
-import android.os.AsyncTask;
+import android.media.ExifInterface;
+import android.net.Uri;
+import android.os.ParcelFileDescriptor;
 import android.os.Handler;
 import android.os.Looper;
 
+import com.qmdeve.liteimagecompressor.callback.BatchCompressCallback;
 import com.qmdeve.liteimagecompressor.callback.CompressCallback;
+import com.qmdeve.liteimagecompressor.callback.CompressMetricsListener;
+import com.qmdeve.liteimagecompressor.codec.EncodeBuffer;
 
-import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
 
 public class LiteImageCompressor {
+    private static final int COPY_BUFFER_SIZE = 64 * 1024;
+    private static final int PREVIEW_MAX_SIDE = 160;
+    private static final int PREVIEW_QUALITY = 40;
+    private static final String ALREADY_OPTIMAL = "JPEG is already at or below the target quality, return original";
+
     private CompressConfig config;
     private CompressCallback callback;
     private Handler mainHandler;
+    private Executor executor;
+    private int maxInFlight;
+    private BitmapPool bitmapPool;
+    private BitmapDecoder bitmapDecoder;
+    private ResultCache resultCache;
+    private boolean deduplicateRequests;
+    private final ConcurrentHashMap<InFlightCompression.Key, InFlightCompression> inFlight = new ConcurrentHashMap<>();
+    private CompressMetricsListener metricsListener;
+    private AdaptiveScheduler scheduler;
 
     private LiteImageCompressor(Builder builder) {
         this.config = builder.config;
         this.callback = builder.callback;
         this.mainHandler = new Handler(Looper.getMainLooper());
+        this.executor = builder.executor != null ? builder.executor : DefaultExecutorHolder.INSTANCE;
+        this.maxInFlight = builder.maxInFlight > 0 ? builder.maxInFlight : DefaultExecutorHolder.POOL_SIZE;
+        this.bitmapPool = builder.bitmapPool;
+        if (builder.memoryPressureSource != null) {
+            this.scheduler = new AdaptiveScheduler(executor, builder.memoryPressureSource, maxInFlight);
+            this.executor = scheduler;
+        }
+        this.bitmapDecoder = new BitmapDecoder(config, bitmapPool, scheduler);
+        this.resultCache = builder.resultCache;
+        this.deduplicateRequests = builder.deduplicateRequests;
+        this.metricsListener = builder.metricsListener;
+    }
+
+    /**
+     * Compressions allowed to run at once. Below maxInFlight while an adaptive scheduler is
+     * throttling for memory pressure.
+     */
+    public int getCurrentConcurrency() {
+        return scheduler != null ? scheduler.getConcurrency() : maxInFlight;
+    }
+
+    /**
+     * Hands a result bitmap back once the caller is done with it. It is reused for later
+     * decodes when a BitmapPool is configured, otherwise it is recycled.
+     */
+    public void release(Bitmap bitmap) {
+        bitmapDecoder.release(bitmap);
     }
 
     public CompressResult compressSync(String filePath) {
-        return compressFromFile(new File(filePath));
+        return compressSync(new File(filePath));
     }
 
     public CompressResult compressSync(File file) {
-        return compressFromFile(file);
+        return execute(null, session -> compressFromFile(file, session));
     }
 
     public CompressResult compressSync(Bitmap bitmap) {
-        return compressFromBitmap(bitmap, 0);
+        return compressSync(bitmap, 0);
+    }
+
+    /**
+     * @param originalSize known encoded size of the bitmap's source in bytes, used for the
+     *                     maxSize check instead of an estimate; pass 0 to estimate
+     */
+    public CompressResult compressSync(Bitmap bitmap, long originalSize) {
+        return execute(null, session -> compressFromBitmap(bitmap, originalSize, false, null, session));
     }
 
     public CompressResult compressSync(byte[] data) {
-        Bitmap bitmap = BitmapFactory.decodeByteArray(data, 0, data.length);
-        long originalSize = data.length;
-        return compressFromBitmap(bitmap, originalSize);
+        return execute(null, session -> compressFromBytes(data, session));
+    }
+
+    /**
+     * Compresses a content:// (or file://) Uri without resolving a file path or copying it to a
+     * temp file. Seekable sources are decoded straight from their file descriptor, anything else
+     * is streamed once.
+     */
+    public CompressResult compressSync(ContentResolver resolver, Uri uri) {
+        return execute(null, session -> compressFromUri(resolver, uri, session));
+    }
+
+    /**
+     * Compresses an encoded image stream with a single pass over it; the stream is never
+     * copied to the heap as a whole. The caller closes it.
+     */
+    public CompressResult compressSync(InputStream input) {
+        return execute(null, session -> compressFromStream(input, session));
+    }
+
+    /**
+     * Compresses a file straight to another file. The result carries the output file and
+     * sizes but no Bitmap, so the encoded bytes are never decoded again. An input within both
+     * maxSize and the max dimensions is copied as-is.
+     */
+    public CompressResult compressToFile(File input, File output) {
+        if (input == null || !input.exists()) {
+            return CompressResult.builder()
+                    .setSuccess(false)
+                    .setErrorMessage("File does not exist")
+                    .build();
+        }
+        if (output == null) {
+            return CompressResult.builder()
+                    .setSuccess(false)
+                    .setErrorMessage("Output file is null")
+                    .build();
+        }
+
+        try {
+            if (input.getCanonicalFile().equals(output.getCanonicalFile())) {
+                return CompressResult.builder()
+                        .setSuccess(false)
+                        .setErrorMessage("Output file is the input file")
+                        .build();
+            }
+        } catch (IOException e) {
+            return CompressResult.builder()
+                    .setSuccess(false)
+                    .setErrorMessage("Failed to resolve output file: " + e.getMessage())
+                    .build();
+        }
+
+        File parent = output.getAbsoluteFile().getParentFile();
+        if (parent != null && !parent.exists() && !parent.mkdirs()) {
+            return CompressResult.builder()
+                    .setSuccess(false)
+                    .setErrorMessage("Failed to create output directory")
+                    .build();
+        }
+
+        // Written next to the output and renamed over it only once complete, so a failed run
+        // never leaves a truncated file behind or touches an existing one
+        File temp = new File(parent, "." + output.getName() + ".tmp");
+        CompressResult result = execute(null, session -> {
+            try (OutputStream out = new FileOutputStream(temp)) {
+                long originalFileSize = input.length();
+                ImageHeader header = ImageHeader.read(input);
+                OriginalSource original = target -> copyFile(input, target);
+                return streamCompression(original, originalFileSize, header, out, session,
+                        () -> getBitmapFromFile(input, header, session), originalFileSize);
+            }
+        });
+
+        if (!result.isSuccess()) {
+            temp.delete();
+            return result;
+        }
+        if (result.wasCompressed() && !config.getPreservedExifTags().isEmpty()
+                && result.getFormat() == Bitmap.CompressFormat.JPEG) {
+            try {
+                copyExif(input, temp);
+            } catch (IOException e) {
+                result = result.toBuilder()
+                        .setErrorMessage("Compressed without EXIF tags: " + e.getMessage())
+                        .build();
+            }
+        }
+        if (!temp.renameTo(output)) {
+            temp.delete();
+            return CompressResult.builder()
+                    .setSuccess(false)
+                    .setErrorMessage("Failed to move compressed file to " + output)
+                    .build();
+        }
+        return result.toBuilder().setOutputFile(output).build();
+    }
+
+    /**
+     * Copies the configured tags onto a compressed JPEG. The orientation tag is reset when the
+     * pixels were already rotated during decode, and carried over when they were not.
+     */
+    private void copyExif(File source, File target) throws IOException {
+        ExifInterface from = new ExifInterface(source.getPath());
+        ExifInterface to = new ExifInterface(target.getPath());
+        for (String tag : config.getPreservedExifTags()) {
+            String value = from.getAttribute(tag);
+            if (value != null) {
+                to.setAttribute(tag, value);
+            }
+        }
+        if (config.isApplyExifOrientation()) {
+            to.setAttribute(ExifInterface.TAG_ORIENTATION, String.valueOf(ExifInterface.ORIENTATION_NORMAL));
+        } else {
+            String orientation = from.getAttribute(ExifInterface.TAG_ORIENTATION);
+            if (orientation != null) {
+                to.setAttribute(ExifInterface.TAG_ORIENTATION, orientation);
+            }
+        }
+        to.saveAttributes();
+    }
+
+    /**
+     * Compresses an encoded image stream into {@code output}. The input is read fully into
+     * memory once so its size can be checked against maxSize; the caller closes both streams.
+     */
+    public CompressResult compressTo(InputStream input, OutputStream output) {
+        if (input == null || output == null) {
+            return CompressResult.builder()
+                    .setSuccess(false)
+                    .setErrorMessage("Stream is null")
+                    .build();
+        }
+
+        return execute(null, session -> {
+            long start = System.nanoTime();
+            EncodeBuffer source = new EncodeBuffer(input.available());
+            copyStream(input, source);
+            session.recordRead(start, source.size(), source.buffer().length);
+            ImageHeader header = ImageHeader.parse(source.buffer(), source.size());
+            OriginalSource original = target -> source.writeTo(target);
+            return streamCompression(original, source.size(), header, output, session,
+                    () -> bitmapDecoder.decodeByteArray(source.buffer(), source.size(), session), 0);
+        });
     }
 
-    public void compressAsync(String filePath) {
-        new CompressTask().execute(filePath);
+    public Future<CompressResult> compressAsync(String filePath) {
+        return compressAsync(filePath != null ? new File(filePath) : null);
     }
 
-    public void compressAsync(File file) {
-        new CompressTask().execute(file);
+    public Future<CompressResult> compressAsync(File file) {
+        InFlightCompression.Key key = deduplicateRequests && file != null
+                ? InFlightCompression.fileKey(file, requestConfigKey()) : null;
+        return submit(key, task -> execute(task, session -> compressFromFile(file, session)));
     }
 
-    public void compressAsync(Bitmap bitmap) {
-        new CompressTask().execute(bitmap);
+    public Future<CompressResult> compressAsync(Bitmap bitmap) {
+        return compressAsync(bitmap, 0);
     }
 
-    public void compressAsync(byte[] data) {
-        new CompressTask().execute(data);
+    public Future<CompressResult> compressAsync(Bitmap bitmap, long originalSize) {
+        InFlightCompression.Key key = deduplicateRequests && bitmap != null
+                ? InFlightCompression.instanceKey(bitmap, requestConfigKey() + ":" + originalSize) : null;
+        return submit(key, task -> execute(task,
+                session -> compressFromBitmap(bitmap, originalSize, false, null, session)));
+    }
+
+    public Future<CompressResult> compressAsync(byte[] data) {
+        InFlightCompression.Key key = deduplicateRequests && data != null
+                ? InFlightCompression.instanceKey(data, requestConfigKey()) : null;
+        return submit(key, task -> execute(task, session -> compressFromBytes(data, session)));
+    }
+
+    public Future<CompressResult> compressAsync(ContentResolver resolver, Uri uri) {
+        InFlightCompression.Key key = deduplicateRequests && uri != null
+                ? InFlightCompression.instanceKey(uri.toString(), requestConfigKey()) : null;
+        return submit(key, task -> execute(task, session -> compressFromUri(resolver, uri, session)));
+    }
+
+    public Future<CompressResult> compressAsync(InputStream input) {
+        return submit(null, task -> execute(task, session -> compressFromStream(input, session)));
+    }
+
+    public Future<CompressResult> compressProgressive(String filePath) {
+        return compressProgressive(filePath != null ? new File(filePath) : null);
+    }
+
+    /**
+     * Like {@link #compressAsync(File)}, but first delivers a small thumbnail and then a
+     * mid-quality encode through {@link CompressCallback#onProgress}, all from one decode.
+     * Partial results carry their encoded bytes in getData(). The returned future and
+     * onSuccess get the final result.
+     */
+    public Future<CompressResult> compressProgressive(File file) {
+        return submit(null, task -> execute(task, session -> compressProgressively(file, session, partial -> {
+            if (callback != null && !task.isCancelled()) {
+                mainHandler.post(() -> callback.onProgress(partial));
+            }
+        })));
+    }
+
+    /**
+     * Compresses every file on the executor, keeping at most maxInFlight items decoding or
+     * encoding at once. Cancelling the returned future stops scheduling and aborts running items.
+     */
+    public Future<BatchCompressResult> compressBatch(List<File> files) {
+        BatchTask batch = new BatchTask(new ArrayList<>(files));
+        batch.start();
+        return batch.future;
+    }
+
+    /**
+     * Produces one result per variant from a single decode of {@code file}, in the order of
+     * {@code variants}. Each variant contributes its size, quality and format settings; decode
+     * options such as decodeConfig come from this compressor's config. Only the first variant
+     * left at full size may return the decoded original; every other result has its own
+     * bitmap. The callback gets the same signals as for {@link #compressBatch}, with one item
+     * per variant.
+     */
+    public Future<BatchCompressResult> compressVariants(File file, List<CompressConfig> variants) {
+        VariantTask task = new VariantTask(file, new ArrayList<>(variants), true);
+        task.start();
+        return task.future;
+    }
+
+    public BatchCompressResult compressVariantsSync(File file, List<CompressConfig> variants) {
+        return new VariantTask(file, new ArrayList<>(variants), false).run();
+    }
+
+    public CompressFlow.Publisher<CompressResult> compressStream(CompressFlow.Publisher<?> sources) {
+        return compressStream(sources, maxInFlight, true);
+    }
+
+    /**
+     * Compresses a stream of sources (File, path String, byte[], Bitmap or InputStream, which is
+     * closed after use) into a stream of
+     * results. At most {@code concurrency} sources are requested from upstream ahead of what
+     * the subscriber has consumed, so a slow subscriber throttles decoding rather than letting
+     * results pile up. With {@code ordered} results follow source order, otherwise completion
+     * order. Signals arrive on the compressing threads; each subscribe starts a new run.
+     */
+    public CompressFlow.Publisher<CompressResult> compressStream(CompressFlow.Publisher<?> sources,
+                                                                 int concurrency, boolean ordered) {
+        if (concurrency < 1) {
+            throw new IllegalArgumentException("Concurrency must be at least 1");
+        }
+        return subscriber -> sources.subscribe(new StreamTask(subscriber, concurrency, ordered));
+    }
+
+    private Future<CompressResult> submit(InFlightCompression.Key key, InFlightCompression.Stage work) {
+        if (callback != null) {
+            mainHandler.post(() -> callback.onStart());
+        }
+        return new CompressFuture(InFlightCompression.join(inFlight, key, executor, work));
+    }
+
+    private CompressResult execute(Future<?> task, Pipeline pipeline) {
+        CompressSession session = new CompressSession(task);
+        CompressResult result;
+        try {
+            result = pipeline.run(session);
+        } catch (Exception e) {
+            result = CompressResult.builder()
+                    .setSuccess(false)
+                    .setErrorMessage("Compression failed: " + e.getMessage())
+                    .build();
+        }
+
+        CompressMetrics metrics = session.toMetrics();
+        result = result.toBuilder().setMetrics(metrics).build();
+        if (metricsListener != null) {
+            try {
+                metricsListener.onMetrics(metrics, result);
+            } catch (RuntimeException e) {
+                // A failing listener must not turn a finished compression into a failure
+            }
+        }
+        return result;
+    }
+
+    private String requestConfigKey() {
+        return config.cacheKey() + ":" + config.isLazyDecode();
+    }
+
+    private CompressResult compressFromBytes(byte[] data, CompressSession session) {
+        if (data == null) {
+            return CompressResult.builder()
+                    .setSuccess(false)
+                    .setErrorMessage("Data is null")
+                    .build();
+        }
+        ImageHeader header = ImageHeader.parse(data, data.length);
+        if (!header.isValid()) {
+            return CompressResult.builder()
+                    .setSuccess(false)
+                    .setErrorMessage(header.error)
+                    .build();
+        }
+        long originalSize = data.length;
+        boolean underMaxSize = originalSize / 1024 <= config.getMaxSize();
+        boolean withinLimits = underMaxSize && !exceedsMaxDimensions(header);
+        boolean alreadyOptimal = !underMaxSize && isAlreadyOptimal(header);
+        if (config.isLazyDecode() && (withinLimits || alreadyOptimal)) {
+            return CompressResult.builder()
+                    .setSuccess(true)
+                    .setData(data)
+                    .setBitmapLoader(() -> bitmapDecoder.decodeByteArray(data))
+                    .setOriginalSize(originalSize)
+                    .setCompressedSize(originalSize)
+                    .setWasCompressed(false)
+                    .setErrorMessage(alreadyOptimal ? ALREADY_OPTIMAL : null)
+                    .build();
+        }
+        if (alreadyOptimal) {
+            long start = System.nanoTime();
+            Bitmap bitmap = bitmapDecoder.decodeByteArray(data);
+            session.recordDecode(start, bitmap, originalSize);
+            if (bitmap == null) {
+                return CompressResult.builder()
+                        .setSuccess(false)
+                        .setErrorMessage("Failed to load original bitmap")
+                        .build();
+            }
+            return CompressResult.builder()
+                    .setSuccess(true)
+                    .setCompressedBitmap(bitmap)
+                    .setOriginalSize(originalSize)
+                    .setCompressedSize(originalSize)
+                    .setWasCompressed(false)
+                    .setErrorMessage(ALREADY_OPTIMAL)
+                    .build();
+        }
+
+        String cacheKey = null;
+        if (resultCache != null && !withinLimits) {
+            cacheKey = ResultCache.bytesKey(data, config);
+            CompressResult cached = getCachedResult(cacheKey);
+            if (cached != null) {
+                return cached;
+            }
+        }
+
+        session.checkCancelled();
+        long start = System.nanoTime();
+        Bitmap bitmap = bitmapDecoder.decodeByteArray(data, data.length, session);
+        session.recordDecode(start, bitmap, originalSize);
+        return compressFromBitmap(bitmap, originalSize, true, cacheKey, session);
     }
 
-    private CompressResult compressFromFile(File file) {
+    private CompressResult compressFromFile(File file, CompressSession session) {
         if (file == null || !file.exists()) {
             return CompressResult.builder()
                     .setSuccess(false)
@@ -70,25 +475,34 @@ public class LiteImageCompressor {
             long originalFileSize = file.length();
             long originalFileSizeKB = originalFileSize / 1024;
 
-            if (originalFileSizeKB <= config.getMaxSize()) {
-                Bitmap originalBitmap = getBitmapFromFile(file);
-                if (originalBitmap == null) {
-                    return CompressResult.builder()
-                            .setSuccess(false)
-                            .setErrorMessage("Failed to load original bitmap")
-                            .build();
-                }
-
+            ImageHeader header = ImageHeader.read(file);
+            if (!header.isValid()) {
                 return CompressResult.builder()
-                        .setSuccess(true)
-                        .setCompressedBitmap(originalBitmap)
-                        .setOriginalSize(originalFileSize)
-                        .setCompressedSize(originalFileSize)
-                        .setWasCompressed(false)
+                        .setSuccess(false)
+                        .setErrorMessage(header.error)
                         .build();
             }
 
-            Bitmap originalBitmap = getBitmapFromFile(file);
+            if (originalFileSizeKB <= config.getMaxSize() && !exceedsMaxDimensions(header)) {
+                return originalFileResult(file, header, originalFileSize, null, session);
+            }
+            if (isAlreadyOptimal(header)) {
+                return originalFileResult(file, header, originalFileSize, ALREADY_OPTIMAL, session);
+            }
+
+            String cacheKey = null;
+            if (resultCache != null) {
+                cacheKey = ResultCache.fileKey(file, config);
+                CompressResult cached = getCachedResult(cacheKey);
+                if (cached != null) {
+                    return cached;
+                }
+            }
+
+            session.checkCancelled();
+            long start = System.nanoTime();
+            Bitmap originalBitmap = getBitmapFromFile(file, header, session);
+            session.recordDecode(start, originalBitmap, originalFileSize);
             if (originalBitmap == null) {
                 return CompressResult.builder()
                         .setSuccess(false)
@@ -96,8 +510,10 @@ public class LiteImageCompressor {
                         .build();
             }
 
-            return performCompression(originalBitmap, originalFileSize);
+            return performCompression(originalBitmap, originalFileSize, true, cacheKey, session);
 
+        } catch (CancellationException e) {
+            throw e;
         } catch (Exception e) {
             return CompressResult.builder()
                     .setSuccess(false)
@@ -106,7 +522,181 @@ public class LiteImageCompressor {
         }
     }
 
-    private CompressResult compressFromBitmap(Bitmap bitmap, long originalSize) {
+    /**
+     * Result for a file returned unchanged: by reference when lazyDecode is set, otherwise
+     * with its decoded bitmap.
+     */
+    private CompressResult originalFileResult(File file, ImageHeader header, long originalFileSize,
+                                              String message, CompressSession session) {
+        if (config.isLazyDecode()) {
+            return CompressResult.builder()
+                    .setSuccess(true)
+                    .setSourceFile(file)
+                    .setBitmapLoader(() -> getBitmapFromFile(file, header))
+                    .setOriginalSize(originalFileSize)
+                    .setCompressedSize(originalFileSize)
+                    .setWasCompressed(false)
+                    .setErrorMessage(message)
+                    .build();
+        }
+
+        long start = System.nanoTime();
+        Bitmap originalBitmap = getBitmapFromFile(file, header);
+        session.recordDecode(start, originalBitmap, originalFileSize);
+        if (originalBitmap == null) {
+            return CompressResult.builder()
+                    .setSuccess(false)
+                    .setErrorMessage("Failed to load original bitmap")
+                    .build();
+        }
+
+        return CompressResult.builder()
+                .setSuccess(true)
+                .setCompressedBitmap(originalBitmap)
+                .setOriginalSize(originalFileSize)
+                .setCompressedSize(originalFileSize)
+                .setWasCompressed(false)
+                .setErrorMessage(message)
+                .build();
+    }
+
+    /**
+     * A JPEG to be re-encoded as JPEG, within the max dimensions and already quantized at or
+     * below the configured quality, would only lose detail by a second encode at that quality.
+     * Never true in fitToMaxSize or minSsim mode, where a search picks the quality instead.
+     * Other formats carry no quality to compare, so they are always re-encoded.
+     */
+    private boolean isAlreadyOptimal(ImageHeader header) {
+        if (config.isFitToMaxSize() || config.getMinSsim() > 0 || config.isAutoFormat()
+                || config.getFormat() != Bitmap.CompressFormat.JPEG
+                || !ImageHeader.MIME_JPEG.equals(header.mimeType) || header.quality <= 0) {
+            return false;
+        }
+        return !exceedsMaxDimensions(header) && header.quality <= config.getQuality();
+    }
+
+    /**
+     * Whether the image, as it will be displayed, is larger than maxWidth or maxHeight. Such an
+     * input is never returned unchanged, however small its encoded size.
+     */
+    private boolean exceedsMaxDimensions(ImageHeader header) {
+        boolean transposed = config.isApplyExifOrientation() && ImageHeader.isTransposed(header.orientation);
+        return exceedsMaxDimensions(transposed ? header.height : header.width,
+                transposed ? header.width : header.height);
+    }
+
+    private boolean exceedsMaxDimensions(int width, int height) {
+        return (config.getMaxWidth() > 0 && width > config.getMaxWidth())
+                || (config.getMaxHeight() > 0 && height > config.getMaxHeight());
+    }
+
+    private CompressResult compressFromUri(ContentResolver resolver, Uri uri, CompressSession session)
+            throws IOException {
+        if (resolver == null || uri == null) {
+            return CompressResult.builder()
+                    .setSuccess(false)
+                    .setErrorMessage("Uri is null")
+                    .build();
+        }
+
+        ParcelFileDescriptor descriptor;
+        try {
+            descriptor = resolver.openFileDescriptor(uri, "r");
+        } catch (FileNotFoundException e) {
+            descriptor = null;
+        }
+        if (descriptor != null) {
+            try (ParcelFileDescriptor pfd = descriptor) {
+                if (pfd.getStatSize() >= 0) {
+                    CompressResult result = compressFromDescriptor(new FileInputStream(pfd.getFileDescriptor()),
+                            pfd.getStatSize(), session);
+                    if (result != null) {
+                        return result;
+                    }
+                }
+            }
+        }
+
+        // Pipes, sockets and providers without a seekable descriptor: one streaming pass
+        try (InputStream in = resolver.openInputStream(uri)) {
+            if (in == null) {
+                return CompressResult.builder()
+                        .setSuccess(false)
+                        .setErrorMessage("Failed to open " + uri)
+                        .build();
+            }
+            return compressFromStream(in, session);
+        }
+    }
+
+    /**
+     * Returns null, having consumed nothing, when the descriptor cannot be read at a position,
+     * so the caller can fall back to a stream.
+     */
+    private CompressResult compressFromDescriptor(FileInputStream in, long originalSize, CompressSession session)
+            throws IOException {
+        ImageHeader header;
+        try {
+            header = ImageHeader.read(in.getChannel());
+        } catch (IOException e) {
+            return null;
+        }
+        if (!header.isValid()) {
+            return CompressResult.builder()
+                    .setSuccess(false)
+                    .setErrorMessage(header.error)
+                    .build();
+        }
+
+        session.checkCancelled();
+        long start = System.nanoTime();
+        Bitmap bitmap = bitmapDecoder.decodeDescriptor(in, header, session);
+        session.recordDecode(start, bitmap, originalSize);
+        if (bitmap == null) {
+            return CompressResult.builder()
+                    .setSuccess(false)
+                    .setErrorMessage("Failed to load original bitmap")
+                    .build();
+        }
+        if (originalSize / 1024 > config.getMaxSize() && isAlreadyOptimal(header)) {
+            return CompressResult.builder()
+                    .setSuccess(true)
+                    .setCompressedBitmap(bitmap)
+                    .setOriginalSize(originalSize)
+                    .setCompressedSize(originalSize)
+                    .setWasCompressed(false)
+                    .setErrorMessage(ALREADY_OPTIMAL)
+                    .build();
+        }
+        return compressFromBitmap(bitmap, originalSize, true, null, session);
+    }
+
+    private CompressResult compressFromStream(InputStream input, CompressSession session) throws IOException {
+        if (input == null) {
+            return CompressResult.builder()
+                    .setSuccess(false)
+                    .setErrorMessage("Stream is null")
+                    .build();
+        }
+
+        session.checkCancelled();
+        long start = System.nanoTime();
+        CountingInputStream counting = new CountingInputStream(input);
+        Bitmap bitmap = bitmapDecoder.decodeStream(counting, session);
+        // The decoder may stop before the end; the rest still counts towards the original size
+        counting.skipToEnd();
+        session.recordDecode(start, bitmap, counting.count);
+        if (bitmap == null) {
+            return CompressResult.builder()
+                    .setSuccess(false)
+                    .setErrorMessage("Failed to load original bitmap")
+                    .build();
+        }
+        return compressFromBitmap(bitmap, counting.count, true, null, session);
+    }
+
+    private CompressResult compressFromBitmap(Bitmap bitmap, long originalSize, boolean ownsBitmap,
+                                              String cacheKey, CompressSession session) {
         if (bitmap == null) {
             return CompressResult.builder()
                     .setSuccess(false)
@@ -116,12 +706,12 @@ public class LiteImageCompressor {
 
         try {
             if (originalSize <= 0) {
-                originalSize = estimateOriginalSize(bitmap);
+                originalSize = SizeEstimator.estimate(bitmap, config.getFormat());
             }
 
             long originalSizeKB = originalSize / 1024;
 
-            if (originalSizeKB <= config.getMaxSize()) {
+            if (originalSizeKB <= config.getMaxSize() && !exceedsMaxDimensions(bitmap.getWidth(), bitmap.getHeight())) {
                 return CompressResult.builder()
                         .setSuccess(true)
                         .setCompressedBitmap(bitmap)
@@ -131,8 +721,10 @@ public class LiteImageCompressor {
                         .build();
             }
 
-            return performCompression(bitmap, originalSize);
+            return performCompression(bitmap, originalSize, ownsBitmap, cacheKey, session);
 
+        } catch (CancellationException e) {
+            throw e;
         } catch (Exception e) {
             return CompressResult.builder()
                     .setSuccess(false)
@@ -141,12 +733,14 @@ public class LiteImageCompressor {
         }
     }
 
-    private CompressResult performCompression(Bitmap originalBitmap, long originalSize) {
+    private CompressResult performCompression(Bitmap originalBitmap, long originalSize, boolean ownsBitmap,
+                                              String cacheKey, CompressSession session) {
         try {
-            ByteArrayOutputStream baos = new ByteArrayOutputStream();
-            originalBitmap.compress(config.getFormat(), config.getQuality(), baos);
-            byte[] compressedData = baos.toByteArray();
-            long compressedSize = compressedData.length;
+            long start = System.nanoTime();
+            TargetSizeEncoder.Outcome encoded = new TargetSizeEncoder(config, session).encode(originalBitmap);
+            session.recordEncode(start, encoded);
+            byte[] compressedData = encoded.data.buffer();
+            long compressedSize = encoded.data.size();
 
             if (compressedSize >= originalSize) {
                 return CompressResult.builder()
@@ -159,7 +753,10 @@ public class LiteImageCompressor {
                         .build();
             }
 
-            Bitmap compressedBitmap = BitmapFactory.decodeByteArray(compressedData, 0, compressedData.length);
+            session.checkCancelled();
+            start = System.nanoTime();
+            Bitmap compressedBitmap = bitmapDecoder.decodeEncoded(compressedData, (int) compressedSize);
+            session.recordResultDecode(start, compressedBitmap);
             if (compressedBitmap == null) {
                 return CompressResult.builder()
                         .setSuccess(true)
@@ -171,14 +768,27 @@ public class LiteImageCompressor {
                         .build();
             }
 
+            if (ownsBitmap) {
+                bitmapDecoder.release(originalBitmap);
+            }
+            if (cacheKey != null && !session.isPressureSampled()) {
+                resultCache.put(cacheKey, new ResultCache.Entry(
+                        Arrays.copyOf(compressedData, (int) compressedSize), originalSize));
+            }
             return CompressResult.builder()
                     .setSuccess(true)
                     .setCompressedBitmap(compressedBitmap)
                     .setOriginalSize(originalSize)
                     .setCompressedSize(compressedSize)
                     .setWasCompressed(true)
+                    .setFormat(encoded.format)
                     .build();
 
+        } catch (CancellationException e) {
+            if (ownsBitmap) {
+                bitmapDecoder.release(originalBitmap);
+            }
+            throw e;
         } catch (Exception e) {
             return CompressResult.builder()
                     .setSuccess(true)
@@ -191,63 +801,735 @@ public class LiteImageCompressor {
         }
     }
 
-    private long estimateOriginalSize(Bitmap bitmap) {
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        bitmap.compress(Bitmap.CompressFormat.JPEG, 100, baos);
-        return baos.size();
-    }
-
-    private Bitmap getBitmapFromFile(File file) {
-        try {
-            FileInputStream fis = new FileInputStream(file);
-            Bitmap bitmap = BitmapFactory.decodeStream(fis);
-            fis.close();
-            return bitmap;
-        } catch (IOException e) {
-            return null;
-        }
-    }
-
-    private Bitmap getBitmapFromFile(String filePath) {
-        try {
-            File file = new File(filePath);
-            return getBitmapFromFile(file);
-        } catch (Exception e) {
-            return null;
-        }
-    }
-
-    private class CompressTask extends AsyncTask<Object, Void, CompressResult> {
-
-        @Override
-        protected void onPreExecute() {
-            super.onPreExecute();
-            if (callback != null) {
-                mainHandler.post(() -> callback.onStart());
-            }
+    /**
+     * Encodes one variant of a shared decode. Only the variant owning the decoded bitmap can
+     * come back as the original; scaled ones, and other full-size ones, always carry their own
+     * encode.
+     */
+    private CompressResult encodeVariant(Bitmap bitmap, CompressConfig variant, long originalSize, boolean scaled,
+                                         CompressSession session) throws IOException {
+        if (!scaled && originalSize / 1024 <= variant.getMaxSize()) {
+            return CompressResult.builder()
+                    .setSuccess(true)
+                    .setCompressedBitmap(bitmap)
+                    .setOriginalSize(originalSize)
+                    .setCompressedSize(originalSize)
+                    .setWasCompressed(false)
+                    .build();
         }
 
-        @Override
-        protected CompressResult doInBackground(Object... params) {
-            if (params[0] instanceof String) {
-                return compressSync((String) params[0]);
-            } else if (params[0] instanceof File) {
-                return compressSync((File) params[0]);
-            } else if (params[0] instanceof Bitmap) {
-                return compressSync((Bitmap) params[0]);
-            } else if (params[0] instanceof byte[]) {
-                return compressSync((byte[]) params[0]);
-            }
+        long start = System.nanoTime();
+        TargetSizeEncoder.Outcome encoded = new TargetSizeEncoder(variant, session).encode(bitmap);
+        session.recordEncode(start, encoded);
+        long compressedSize = encoded.data.size();
+        if (!scaled && compressedSize >= originalSize) {
             return CompressResult.builder()
-                    .setSuccess(false)
-                    .setErrorMessage("Unsupported input type")
+                    .setSuccess(true)
+                    .setCompressedBitmap(bitmap)
+                    .setOriginalSize(originalSize)
+                    .setCompressedSize(originalSize)
+                    .setWasCompressed(false)
+                    .setErrorMessage("Compressed image is larger than original, return original")
                     .build();
         }
 
+        byte[] data = Arrays.copyOf(encoded.data.buffer(), (int) compressedSize);
+        if (variant.isLazyDecode()) {
+            return CompressResult.builder()
+                    .setSuccess(true)
+                    .setData(data)
+                    .setBitmapLoader(() -> bitmapDecoder.decodeEncoded(data, data.length))
+                    .setOriginalSize(originalSize)
+                    .setCompressedSize(compressedSize)
+                    .setWasCompressed(true)
+                    .setFormat(encoded.format)
+                    .build();
+        }
+
+        session.checkCancelled();
+        start = System.nanoTime();
+        Bitmap compressedBitmap = bitmapDecoder.decodeEncoded(data, data.length);
+        session.recordResultDecode(start, compressedBitmap);
+        if (compressedBitmap == null) {
+            return CompressResult.builder()
+                    .setSuccess(false)
+                    .setErrorMessage("Failed to decode compressed image")
+                    .build();
+        }
+        return CompressResult.builder()
+                .setSuccess(true)
+                .setCompressedBitmap(compressedBitmap)
+                .setOriginalSize(originalSize)
+                .setCompressedSize(compressedSize)
+                .setWasCompressed(true)
+                .setFormat(encoded.format)
+                .build();
+    }
+
+    private CompressResult compressProgressively(File file, CompressSession session,
+                                                 Consumer<CompressResult> progress) throws IOException {
+        if (file == null || !file.exists()) {
+            return CompressResult.builder()
+                    .setSuccess(false)
+                    .setErrorMessage("File does not exist")
+                    .build();
+        }
+        ImageHeader header = ImageHeader.read(file);
+        if (!header.isValid()) {
+            return CompressResult.builder()
+                    .setSuccess(false)
+                    .setErrorMessage(header.error)
+                    .build();
+        }
+
+        long originalFileSize = file.length();
+        boolean needsCompression = (originalFileSize / 1024 > config.getMaxSize() || exceedsMaxDimensions(header))
+                && !isAlreadyOptimal(header);
+        String cacheKey = null;
+        if (needsCompression && resultCache != null) {
+            cacheKey = ResultCache.fileKey(file, config);
+            CompressResult cached = getCachedResult(cacheKey);
+            if (cached != null) {
+                return cached;
+            }
+        }
+
+        session.checkCancelled();
+        long start = System.nanoTime();
+        Bitmap bitmap = getBitmapFromFile(file, header, session);
+        session.recordDecode(start, bitmap, originalFileSize);
+        if (bitmap == null) {
+            return CompressResult.builder()
+                    .setSuccess(false)
+                    .setErrorMessage("Failed to load original bitmap")
+                    .build();
+        }
+
+        progress.accept(encodePreview(bitmap, PREVIEW_MAX_SIDE, PREVIEW_QUALITY, originalFileSize, session));
+        if (!needsCompression) {
+            return CompressResult.builder()
+                    .setSuccess(true)
+                    .setCompressedBitmap(bitmap)
+                    .setOriginalSize(originalFileSize)
+                    .setCompressedSize(originalFileSize)
+                    .setWasCompressed(false)
+                    .build();
+        }
+
+        int midQuality = (Math.min(config.getMinQuality(), config.getQuality()) + config.getQuality()) / 2;
+        progress.accept(encodePreview(bitmap, 0, midQuality, originalFileSize, session));
+        return performCompression(bitmap, originalFileSize, true, cacheKey, session);
+    }
+
+    /**
+     * Single encode of {@code bitmap}, first scaled down so its longest side is at most
+     * {@code maxSide} (0 keeps its size). The bitmap itself is left untouched.
+     */
+    private CompressResult encodePreview(Bitmap bitmap, int maxSide, int quality, long originalSize,
+                                         CompressSession session) {
+        session.checkCancelled();
+        long start = System.nanoTime();
+        Bitmap source = bitmap;
+        int longestSide = Math.max(bitmap.getWidth(), bitmap.getHeight());
+        if (maxSide > 0 && longestSide > maxSide) {
+            float scale = (float) maxSide / longestSide;
+            source = Bitmap.createScaledBitmap(bitmap, Math.max(1, Math.round(bitmap.getWidth() * scale)),
+                    Math.max(1, Math.round(bitmap.getHeight() * scale)), true);
+        }
+        EncodeBuffer buffer = new EncodeBuffer(COPY_BUFFER_SIZE);
+        Bitmap.CompressFormat format = config.isAutoFormat()
+                ? FormatSelector.select(source, quality) : config.getFormat();
+        source.compress(format, quality, buffer);
+        if (source != bitmap) {
+            source.recycle();
+        }
+        session.recordEncode(start, buffer);
+
+        byte[] data = Arrays.copyOf(buffer.buffer(), buffer.size());
+        return CompressResult.builder()
+                .setSuccess(true)
+                .setData(data)
+                .setBitmapLoader(() -> bitmapDecoder.decodeEncoded(data, data.length))
+                .setOriginalSize(originalSize)
+                .setCompressedSize(data.length)
+                .setWasCompressed(true)
+                .setFormat(format)
+                .build();
+    }
+
+    private CompressResult getCachedResult(String cacheKey) {
+        ResultCache.Entry entry = resultCache.get(cacheKey);
+        if (entry == null) {
+            return null;
+        }
+        // Callers own the returned bytes; a shared array would let one of them corrupt the cache
+        byte[] data = entry.data.clone();
+        return CompressResult.builder()
+                .setSuccess(true)
+                .setData(data)
+                .setBitmapLoader(() -> bitmapDecoder.decodeEncoded(data, data.length))
+                .setOriginalSize(entry.originalSize)
+                .setCompressedSize(data.length)
+                .setWasCompressed(true)
+                .setFormat(FormatSelector.formatOf(ImageHeader.parse(data, data.length)))
+                .build();
+    }
+
+    /**
+     * @param sourceBytes bytes the decoder reads itself, 0 when the source is already in memory
+     */
+    private CompressResult streamCompression(OriginalSource original, long originalSize, ImageHeader header,
+                                             OutputStream out, CompressSession session, BitmapSource source,
+                                             long sourceBytes) throws IOException {
+        if (!header.isValid()) {
+            return CompressResult.builder()
+                    .setSuccess(false)
+                    .setErrorMessage(header.error)
+                    .build();
+        }
+
+        long originalSizeKB = originalSize / 1024;
+        boolean oversized = exceedsMaxDimensions(header);
+        boolean alreadyOptimal = originalSizeKB > config.getMaxSize() && isAlreadyOptimal(header);
+        if ((originalSizeKB <= config.getMaxSize() && !oversized) || alreadyOptimal) {
+            long start = System.nanoTime();
+            original.writeTo(out);
+            session.recordWrite(start, originalSize);
+            return CompressResult.builder()
+                    .setSuccess(true)
+                    .setOriginalSize(originalSize)
+                    .setCompressedSize(originalSize)
+                    .setWasCompressed(false)
+                    .setErrorMessage(alreadyOptimal ? ALREADY_OPTIMAL : null)
+                    .build();
+        }
+
+        session.checkCancelled();
+        long start = System.nanoTime();
+        Bitmap bitmap = source.decode();
+        session.recordDecode(start, bitmap, sourceBytes);
+        if (bitmap == null) {
+            return CompressResult.builder()
+                    .setSuccess(false)
+                    .setErrorMessage("Failed to load original bitmap")
+                    .build();
+        }
+
+        TargetSizeEncoder.Outcome encoded;
+        start = System.nanoTime();
+        try {
+            encoded = new TargetSizeEncoder(config, session).encode(bitmap);
+        } finally {
+            bitmapDecoder.release(bitmap);
+        }
+        session.recordEncode(start, encoded);
+
+        session.checkCancelled();
+        long compressedSize = encoded.data.size();
+        start = System.nanoTime();
+        // An original beyond maxWidth/maxHeight is no fallback, even when the scaled encode is larger
+        if (compressedSize >= originalSize && !oversized) {
+            original.writeTo(out);
+            session.recordWrite(start, originalSize);
+            return CompressResult.builder()
+                    .setSuccess(true)
+                    .setOriginalSize(originalSize)
+                    .setCompressedSize(originalSize)
+                    .setWasCompressed(false)
+                    .setErrorMessage("Compressed image is larger than original, return original")
+                    .build();
+        }
+
+        encoded.data.writeTo(out);
+        session.recordWrite(start, compressedSize);
+        return CompressResult.builder()
+                .setSuccess(true)
+                .setOriginalSize(originalSize)
+                .setCompressedSize(compressedSize)
+                .setWasCompressed(true)
+                .setFormat(encoded.format)
+                .build();
+    }
+
+    private static void copyFile(File source, OutputStream out) throws IOException {
+        try (FileInputStream in = new FileInputStream(source)) {
+            if (out instanceof FileOutputStream) {
+                // File to file: let the kernel move the bytes instead of copying through the heap
+                FileChannel channel = in.getChannel();
+                FileChannel target = ((FileOutputStream) out).getChannel();
+                long size = channel.size();
+                long position = 0;
+                while (position < size) {
+                    long transferred = channel.transferTo(position, size - position, target);
+                    if (transferred <= 0) {
+                        // Some channels stop transferring early; finish through the heap
+                        channel.position(position);
+                        copyStream(in, out);
+                        return;
+                    }
+                    position += transferred;
+                }
+            } else {
+                copyStream(in, out);
+            }
+        }
+    }
+
+    private static void copyStream(InputStream in, OutputStream out) throws IOException {
+        byte[] buffer = new byte[COPY_BUFFER_SIZE];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+    }
+
+    private Bitmap getBitmapFromFile(File file, ImageHeader header) {
+        return getBitmapFromFile(file, header, null);
+    }
+
+    private Bitmap getBitmapFromFile(File file, ImageHeader header, CompressSession session) {
+        try {
+            return bitmapDecoder.decodeFile(file, header, session);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private static class CountingInputStream extends FilterInputStream {
+        long count;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1) {
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int read = super.read(buffer, offset, length);
+            if (read > 0) {
+                count += read;
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            count += skipped;
+            return skipped;
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        void skipToEnd() throws IOException {
+            byte[] buffer = new byte[COPY_BUFFER_SIZE];
+            while (read(buffer, 0, buffer.length) != -1) {
+                // counted in read
+            }
+        }
+    }
+
+    private interface Pipeline {
+        CompressResult run(CompressSession session) throws Exception;
+    }
+
+    private interface OriginalSource {
+        void writeTo(OutputStream out) throws IOException;
+    }
+
+    private interface BitmapSource {
+        Bitmap decode() throws IOException;
+    }
+
+    /**
+     * Per-caller view of a possibly shared compression. Cancelling it stops the pipeline at the
+     * next stage boundary once no other caller is waiting, and suppresses this caller's callback.
+     */
+    private class CompressFuture extends CompletableFuture<CompressResult> {
+        private final InFlightCompression shared;
+        // Set by whichever of claim and unsubscribe runs first, so each caller counts once
+        private final AtomicBoolean settled = new AtomicBoolean();
+
+        CompressFuture(InFlightCompression shared) {
+            this.shared = shared;
+            shared.result.whenComplete((result, error) -> {
+                if (error == null) {
+                    claim(result);
+                } else {
+                    completeExceptionally(error);
+                }
+            });
+            whenComplete((result, error) -> dispatch(result, error));
+        }
+
         @Override
-        protected void onPostExecute(CompressResult result) {
-            super.onPostExecute(result);
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            boolean cancelled = super.cancel(mayInterruptIfRunning);
+            if (cancelled && settled.compareAndSet(false, true)) {
+                shared.unsubscribe();
+            }
+            return cancelled;
+        }
+
+        private void claim(CompressResult result) {
+            if (!settled.compareAndSet(false, true)) {
+                return;
+            }
+            if (isCancelled()) {
+                shared.unsubscribe();
+                return;
+            }
+            CompressResult own = shared.claim(result);
+            if (!complete(own)) {
+                // Cancelled while the copy was being made
+                InFlightCompression.discard(own, result);
+            }
+        }
+
+        private void dispatch(CompressResult result, Throwable error) {
+            if (callback == null || isCancelled()) {
+                return;
+            }
+            if (error != null) {
+                Throwable cause = error instanceof CompletionException && error.getCause() != null
+                        ? error.getCause() : error;
+                mainHandler.post(() -> callback.onError("Compression failed: " + cause.getMessage()));
+            } else if (result.isSuccess()) {
+                mainHandler.post(() -> callback.onSuccess(result));
+            } else {
+                mainHandler.post(() -> callback.onError(result.getErrorMessage()));
+            }
+        }
+    }
+
+    private class BatchTask {
+        private final List<File> files;
+        private final CompressResult[] results;
+        private final CompletableFuture<BatchCompressResult> future = new CompletableFuture<>();
+        private final AtomicInteger nextIndex = new AtomicInteger();
+        private final AtomicInteger completedCount = new AtomicInteger();
+
+        BatchTask(List<File> files) {
+            this.files = files;
+            this.results = new CompressResult[files.size()];
+        }
+
+        void start() {
+            if (callback != null) {
+                mainHandler.post(() -> callback.onStart());
+            }
+            if (files.isEmpty()) {
+                finish();
+                return;
+            }
+            int initial = Math.min(maxInFlight, files.size());
+            for (int i = 0; i < initial; i++) {
+                scheduleNext();
+            }
+        }
+
+        private void scheduleNext() {
+            int index = nextIndex.getAndIncrement();
+            if (index >= files.size() || future.isDone()) {
+                return;
+            }
+            try {
+                executor.execute(() -> runItem(index));
+            } catch (RuntimeException e) {
+                fail(e);
+            }
+        }
+
+        private void runItem(int index) {
+            if (future.isDone()) {
+                return;
+            }
+            File file = files.get(index);
+            CompressResult result = compressItem(file);
+            if (future.isDone()) {
+                return;
+            }
+            results[index] = result;
+            int completed = completedCount.incrementAndGet();
+            if (callback instanceof BatchCompressCallback) {
+                BatchCompressCallback batchCallback = (BatchCompressCallback) callback;
+                mainHandler.post(() -> batchCallback.onItemComplete(index, result, completed, files.size()));
+            } else if (callback != null) {
+                if (result.isSuccess()) {
+                    mainHandler.post(() -> callback.onSuccess(result));
+                } else {
+                    mainHandler.post(() -> callback.onError(result.getErrorMessage()));
+                }
+            }
+            if (completed == files.size()) {
+                finish();
+            } else {
+                scheduleNext();
+            }
+        }
+
+        private CompressResult compressItem(File file) {
+            try {
+                return execute(future, session -> compressFromFile(file, session));
+            } catch (Throwable t) {
+                // Errors such as OutOfMemoryError get past execute(); the batch must still complete
+                return CompressResult.builder()
+                        .setSuccess(false)
+                        .setErrorMessage("Compression failed: " + t)
+                        .build();
+            }
+        }
+
+        private void finish() {
+            BatchCompressResult batchResult = BatchCompressResult.builder()
+                    .setResults(Arrays.asList(results))
+                    .build();
+            if (future.complete(batchResult) && callback instanceof BatchCompressCallback) {
+                BatchCompressCallback batchCallback = (BatchCompressCallback) callback;
+                mainHandler.post(() -> batchCallback.onBatchComplete(batchResult));
+            }
+        }
+
+        private void fail(Exception e) {
+            if (future.completeExceptionally(e) && callback != null) {
+                mainHandler.post(() -> callback.onError("Batch compression failed: " + e.getMessage()));
+            }
+        }
+    }
+
+    /**
+     * One decode fanned out into several encodes. Variants are ordered by target size and each
+     * is scaled from the next larger one, so the full-resolution bitmap is only read by the
+     * first scale. Every encode is queued on the executor as soon as its bitmap exists; the
+     * thread running the task then picks up any encode still queued, so it never blocks on
+     * work stuck behind its own slot.
+     */
+    private class VariantTask {
+        private final File file;
+        private final List<CompressConfig> variants;
+        private final boolean notify;
+        private final CompressResult[] results;
+        private final CompletableFuture<BatchCompressResult> future = new CompletableFuture<>();
+        private final AtomicInteger completedCount = new AtomicInteger();
+        private volatile boolean decodedReturned;
+
+        VariantTask(File file, List<CompressConfig> variants, boolean notify) {
+            this.file = file;
+            this.variants = variants;
+            this.notify = notify;
+            this.results = new CompressResult[variants.size()];
+        }
+
+        void start() {
             if (callback != null) {
+                mainHandler.post(() -> callback.onStart());
+            }
+            try {
+                executor.execute(this::run);
+            } catch (RuntimeException e) {
+                if (future.completeExceptionally(e) && callback != null) {
+                    mainHandler.post(() -> callback.onError("Variant compression failed: " + e.getMessage()));
+                }
+            }
+        }
+
+        BatchCompressResult run() {
+            VariantEncode[] encodes = new VariantEncode[variants.size()];
+            List<Bitmap> bitmaps = new ArrayList<>();
+            try {
+                String error = encodeAll(encodes, bitmaps);
+                if (error != null) {
+                    failRemaining(encodes, error);
+                }
+            } catch (Exception e) {
+                failRemaining(encodes, "Compression failed: " + e.getMessage());
+            } finally {
+                for (VariantEncode encode : encodes) {
+                    if (encode != null) {
+                        encode.await();
+                    }
+                }
+                releaseUnreturned(bitmaps);
+            }
+
+            BatchCompressResult batchResult = BatchCompressResult.builder()
+                    .setResults(Arrays.asList(results))
+                    .build();
+            if (future.complete(batchResult) && notify && callback instanceof BatchCompressCallback) {
+                BatchCompressCallback batchCallback = (BatchCompressCallback) callback;
+                mainHandler.post(() -> batchCallback.onBatchComplete(batchResult));
+            }
+            return batchResult;
+        }
+
+        /**
+         * Returns why no variant could be produced, or null once every encode is done.
+         */
+        private String encodeAll(VariantEncode[] encodes, List<Bitmap> bitmaps) throws IOException {
+            if (variants.isEmpty()) {
+                return null;
+            }
+            if (file == null || !file.exists()) {
+                return "File does not exist";
+            }
+            ImageHeader header = ImageHeader.read(file);
+            if (!header.isValid()) {
+                return header.error;
+            }
+
+            CompressSession session = new CompressSession(future);
+            long originalSize = file.length();
+            long start = System.nanoTime();
+            Bitmap decoded = new BitmapDecoder(decodeConfig(), bitmapPool, scheduler).decodeFile(file, header);
+            session.recordDecode(start, decoded, originalSize);
+            if (decoded == null) {
+                return "Failed to load original bitmap";
+            }
+            bitmaps.add(decoded);
+
+            int count = variants.size();
+            int[] widths = new int[count];
+            int[] heights = new int[count];
+            List<Integer> order = new ArrayList<>();
+            for (int i = 0; i < count; i++) {
+                CompressConfig variant = variants.get(i);
+                float scale = 1f;
+                if (variant.getMaxWidth() > 0 && decoded.getWidth() > variant.getMaxWidth()) {
+                    scale = Math.min(scale, (float) variant.getMaxWidth() / decoded.getWidth());
+                }
+                if (variant.getMaxHeight() > 0 && decoded.getHeight() > variant.getMaxHeight()) {
+                    scale = Math.min(scale, (float) variant.getMaxHeight() / decoded.getHeight());
+                }
+                widths[i] = Math.max(1, Math.round(decoded.getWidth() * scale));
+                heights[i] = Math.max(1, Math.round(decoded.getHeight() * scale));
+                order.add(i);
+            }
+            // Stable sort: equal sizes keep request order, and share one scaled bitmap
+            order.sort((a, b) -> Long.compare((long) widths[b] * heights[b], (long) widths[a] * heights[a]));
+
+            Bitmap previous = decoded;
+            boolean decodedOwned = false;
+            for (int index : order) {
+                session.checkCancelled();
+                Bitmap bitmap = scaleDown(previous, widths[index], heights[index]);
+                if (bitmap != previous) {
+                    bitmaps.add(bitmap);
+                }
+                previous = bitmap;
+                // Only the first full-size variant may hand back the decoded bitmap itself;
+                // any other one is always encoded so no two results share it
+                boolean ownsDecoded = bitmap == decoded && !decodedOwned;
+                decodedOwned |= ownsDecoded;
+                VariantEncode encode = new VariantEncode(index, bitmap, originalSize, !ownsDecoded);
+                encodes[index] = encode;
+                try {
+                    executor.execute(encode);
+                } catch (RuntimeException e) {
+                    // Rejected: the loop below runs it on this thread
+                }
+            }
+            for (VariantEncode encode : encodes) {
+                encode.run();
+            }
+            return null;
+        }
+
+        /**
+         * Halves until the remaining step is at most 2x, so the filtered scale never skips
+         * source pixels; the halving steps are recycled as soon as the next one exists.
+         */
+        private Bitmap scaleDown(Bitmap source, int width, int height) {
+            Bitmap current = source;
+            while (current.getWidth() > width * 2 && current.getHeight() > height * 2) {
+                Bitmap half = Bitmap.createScaledBitmap(current, current.getWidth() / 2,
+                        current.getHeight() / 2, true);
+                if (current != source) {
+                    current.recycle();
+                }
+                current = half;
+            }
+            if (current.getWidth() == width && current.getHeight() == height) {
+                return current;
+            }
+            Bitmap scaled = Bitmap.createScaledBitmap(current, width, height, true);
+            if (current != source && current != scaled) {
+                current.recycle();
+            }
+            return scaled;
+        }
+
+        /**
+         * Bounds that contain every variant, and a format that keeps alpha unless all of them
+         * are JPEG, so the shared decode suits the largest and the most demanding variant.
+         */
+        private CompressConfig decodeConfig() {
+            int maxWidth = 0;
+            int maxHeight = 0;
+            boolean boundedWidth = true;
+            boolean boundedHeight = true;
+            boolean allJpeg = true;
+            for (CompressConfig variant : variants) {
+                boundedWidth &= variant.getMaxWidth() > 0;
+                boundedHeight &= variant.getMaxHeight() > 0;
+                maxWidth = Math.max(maxWidth, variant.getMaxWidth());
+                maxHeight = Math.max(maxHeight, variant.getMaxHeight());
+                allJpeg &= !variant.isAutoFormat() && variant.getFormat() == Bitmap.CompressFormat.JPEG;
+            }
+            return config.toBuilder()
+                    .setMaxWidth(boundedWidth ? maxWidth : 0)
+                    .setMaxHeight(boundedHeight ? maxHeight : 0)
+                    .setAutoFormat(false)
+                    .setFormat(allJpeg ? Bitmap.CompressFormat.JPEG : Bitmap.CompressFormat.PNG)
+                    .build();
+        }
+
+        private void failRemaining(VariantEncode[] encodes, String error) {
+            CompressResult failure = CompressResult.builder()
+                    .setSuccess(false)
+                    .setErrorMessage(error)
+                    .build();
+            for (int i = 0; i < results.length; i++) {
+                if (encodes[i] == null) {
+                    deliver(i, failure);
+                } else {
+                    encodes[i].abandon(failure);
+                }
+            }
+        }
+
+        /**
+         * Hands the scaled bitmaps back to the pool, and the decoded one too unless a variant
+         * returned it as the original.
+         */
+        private void releaseUnreturned(List<Bitmap> bitmaps) {
+            for (int i = 0; i < bitmaps.size(); i++) {
+                if (i > 0 || !decodedReturned) {
+                    bitmapDecoder.release(bitmaps.get(i));
+                }
+            }
+        }
+
+        private void deliver(int index, CompressResult result) {
+            results[index] = result;
+            int completed = completedCount.incrementAndGet();
+            if (!notify || future.isCancelled()) {
+                return;
+            }
+            if (callback instanceof BatchCompressCallback) {
+                BatchCompressCallback batchCallback = (BatchCompressCallback) callback;
+                mainHandler.post(() -> batchCallback.onItemComplete(index, result, completed, results.length));
+            } else if (callback != null) {
                 if (result.isSuccess()) {
                     mainHandler.post(() -> callback.onSuccess(result));
                 } else {
@@ -255,11 +1537,294 @@ public class LiteImageCompressor {
                 }
             }
         }
+
+        /**
+         * Encode of one variant. Whichever of the executor and the task thread claims it first
+         * runs it; the other returns immediately.
+         */
+        private class VariantEncode implements Runnable {
+            private final int index;
+            private final Bitmap bitmap;
+            private final long originalSize;
+            private final boolean scaled;
+            private final AtomicBoolean claimed = new AtomicBoolean();
+            private final CountDownLatch done = new CountDownLatch(1);
+
+            VariantEncode(int index, Bitmap bitmap, long originalSize, boolean scaled) {
+                this.index = index;
+                this.bitmap = bitmap;
+                this.originalSize = originalSize;
+                this.scaled = scaled;
+            }
+
+            @Override
+            public void run() {
+                if (!claimed.compareAndSet(false, true)) {
+                    return;
+                }
+                try {
+                    CompressConfig variant = variants.get(index);
+                    CompressResult result = execute(future,
+                            session -> encodeVariant(bitmap, variant, originalSize, scaled, session));
+                    if (!scaled && result.isSuccess() && !result.wasCompressed()) {
+                        decodedReturned = true;
+                    }
+                    deliver(index, result);
+                } finally {
+                    done.countDown();
+                }
+            }
+
+            void abandon(CompressResult failure) {
+                if (claimed.compareAndSet(false, true)) {
+                    deliver(index, failure);
+                    done.countDown();
+                }
+            }
+
+            void await() {
+                boolean interrupted = false;
+                while (true) {
+                    try {
+                        done.await();
+                        break;
+                    } catch (InterruptedException e) {
+                        interrupted = true;
+                    }
+                }
+                if (interrupted) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+    }
+
+    private CompressResult compressSource(Object source, CompressSession session) {
+        if (source instanceof File) {
+            return compressFromFile((File) source, session);
+        } else if (source instanceof String) {
+            return compressFromFile(new File((String) source), session);
+        } else if (source instanceof byte[]) {
+            return compressFromBytes((byte[]) source, session);
+        } else if (source instanceof Bitmap) {
+            return compressFromBitmap((Bitmap) source, 0, false, null, session);
+        } else if (source instanceof InputStream) {
+            try (InputStream in = (InputStream) source) {
+                return compressFromStream(in, session);
+            } catch (IOException e) {
+                return CompressResult.builder()
+                        .setSuccess(false)
+                        .setErrorMessage("Compression failed: " + e.getMessage())
+                        .build();
+            }
+        }
+        return CompressResult.builder()
+                .setSuccess(false)
+                .setErrorMessage("Unsupported source: " + (source == null ? "null" : source.getClass().getName()))
+                .build();
+    }
+
+    /**
+     * Subscriber to the sources and subscription handed to the result subscriber. Every source
+     * requested upstream holds one of {@code concurrency} slots until its result is emitted,
+     * which is what bounds work in flight and buffered results. Emission is serialised by a
+     * drain loop: whichever thread finds it idle emits on behalf of the others.
+     */
+    private class StreamTask implements CompressFlow.Subscriber<Object>, CompressFlow.Subscription {
+        private final CompressFlow.Subscriber<? super CompressResult> downstream;
+        private final int concurrency;
+        private final boolean ordered;
+        private final CompletableFuture<Void> cancelled = new CompletableFuture<>();
+        private final AtomicLong demand = new AtomicLong();
+        private final TreeMap<Long, CompressResult> ready = new TreeMap<>();
+        private CompressFlow.Subscription upstream;
+        private long nextSequence;
+        private long nextEmit;
+        private int usedSlots;
+        private boolean upstreamDone;
+        private Throwable upstreamError;
+        private boolean terminated;
+        private boolean draining;
+        private boolean missed;
+
+        StreamTask(CompressFlow.Subscriber<? super CompressResult> downstream, int concurrency, boolean ordered) {
+            this.downstream = downstream;
+            this.concurrency = concurrency;
+            this.ordered = ordered;
+        }
+
+        @Override
+        public void onSubscribe(CompressFlow.Subscription subscription) {
+            synchronized (this) {
+                if (upstream != null) {
+                    subscription.cancel();
+                    return;
+                }
+                upstream = subscription;
+            }
+            downstream.onSubscribe(this);
+            drain();
+        }
+
+        @Override
+        public void onNext(Object source) {
+            long sequence;
+            synchronized (this) {
+                sequence = nextSequence++;
+            }
+            try {
+                executor.execute(() -> onResult(sequence, execute(cancelled, session -> compressSource(source, session))));
+            } catch (RuntimeException e) {
+                onResult(sequence, CompressResult.builder()
+                        .setSuccess(false)
+                        .setErrorMessage("Compression failed: " + e.getMessage())
+                        .build());
+            }
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            synchronized (this) {
+                upstreamDone = true;
+                upstreamError = throwable;
+            }
+            drain();
+        }
+
+        @Override
+        public void onComplete() {
+            synchronized (this) {
+                upstreamDone = true;
+            }
+            drain();
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                cancel();
+                downstream.onError(new IllegalArgumentException("Request must be positive: " + n));
+                return;
+            }
+            CompressFlow.addCapped(demand, n);
+            drain();
+        }
+
+        @Override
+        public void cancel() {
+            if (cancelled.cancel(false)) {
+                CompressFlow.Subscription subscription;
+                synchronized (this) {
+                    terminated = true;
+                    ready.clear();
+                    subscription = upstream;
+                }
+                if (subscription != null) {
+                    subscription.cancel();
+                }
+            }
+        }
+
+        private void onResult(long sequence, CompressResult result) {
+            synchronized (this) {
+                if (terminated) {
+                    return;
+                }
+                ready.put(ordered ? sequence : nextEmit + ready.size(), result);
+            }
+            drain();
+        }
+
+        private void drain() {
+            synchronized (this) {
+                if (draining) {
+                    missed = true;
+                    return;
+                }
+                draining = true;
+            }
+            while (true) {
+                emitReady();
+                long toRequest = 0;
+                boolean complete = false;
+                Throwable error = null;
+                CompressFlow.Subscription subscription;
+                synchronized (this) {
+                    subscription = upstream;
+                    if (!terminated && !upstreamDone && subscription != null && usedSlots < concurrency) {
+                        toRequest = concurrency - usedSlots;
+                        usedSlots = concurrency;
+                    }
+                    if (!terminated && upstreamDone && ready.isEmpty() && nextEmit == nextSequence) {
+                        terminated = true;
+                        complete = true;
+                        error = upstreamError;
+                    }
+                }
+                if (toRequest > 0) {
+                    subscription.request(toRequest);
+                }
+                if (complete) {
+                    if (error != null) {
+                        downstream.onError(error);
+                    } else {
+                        downstream.onComplete();
+                    }
+                }
+                synchronized (this) {
+                    if (!missed) {
+                        draining = false;
+                        return;
+                    }
+                    missed = false;
+                }
+            }
+        }
+
+        private void emitReady() {
+            while (demand.get() > 0) {
+                CompressResult result;
+                synchronized (this) {
+                    if (terminated || ready.isEmpty() || ready.firstKey() != nextEmit) {
+                        return;
+                    }
+                    result = ready.pollFirstEntry().getValue();
+                    nextEmit++;
+                    usedSlots--;
+                }
+                demand.decrementAndGet();
+                downstream.onNext(result);
+            }
+        }
+    }
+
+    private static class DefaultExecutorHolder {
+        static final int POOL_SIZE = Math.max(1, Runtime.getRuntime().availableProcessors());
+        static final ExecutorService INSTANCE = Executors.newFixedThreadPool(
+                POOL_SIZE,
+                new ThreadFactory() {
+                    private final AtomicInteger count = new AtomicInteger();
+
+                    @Override
+                    public Thread newThread(Runnable r) {
+                        Thread thread = new Thread(r, "LiteImageCompressor-" + count.incrementAndGet());
+                        thread.setDaemon(true);
+                        thread.setPriority(Thread.NORM_PRIORITY - 1);
+                        return thread;
+                    }
+                });
     }
 
     public static class Builder {
         private CompressConfig config = CompressConfig.builder().build();
         private CompressCallback callback;
+        private Executor executor;
+        private int maxInFlight;
+        private BitmapPool bitmapPool;
+        private ResultCache resultCache;
+        private boolean deduplicateRequests;
+        private CompressMetricsListener metricsListener;
+        private MemoryPressureSource memoryPressureSource;
 
         public Builder setConfig(CompressConfig config) {
             this.config = config;
@@ -271,20 +1836,94 @@ public class LiteImageCompressor {
             return this;
         }
 
+        /**
+         * Executor used by compressAsync. Defaults to a shared fixed pool sized to the CPU cores.
+         */
+        public Builder setExecutor(Executor executor) {
+            this.executor = executor;
+            return this;
+        }
+
+        /**
+         * Upper bound on batch items being decoded or encoded at once. Defaults to the CPU core count.
+         */
+        public Builder setMaxInFlight(int maxInFlight) {
+            if (maxInFlight < 1) {
+                throw new IllegalArgumentException("Max in-flight must be at least 1");
+            }
+            this.maxInFlight = maxInFlight;
+            return this;
+        }
+
+        /**
+         * Pool whose bitmaps are reused as inBitmap for decodes; see {@link LiteImageCompressor#release(Bitmap)}.
+         */
+        public Builder setBitmapPool(BitmapPool bitmapPool) {
+            this.bitmapPool = bitmapPool;
+            return this;
+        }
+
+        /**
+         * Cache consulted by compressSync/compressAsync for file, path and byte[] inputs.
+         * A hit returns the cached encoded bytes and decodes them only on getCompressedBitmap().
+         */
+        public Builder setResultCache(ResultCache resultCache) {
+            this.resultCache = resultCache;
+            return this;
+        }
+
+        /**
+         * Coalesce this compressor's compressAsync calls for the same source while one is in
+         * flight. Every caller still gets its own copy of the result Bitmap. Disabled by default.
+         */
+        public Builder setDeduplicateRequests(boolean deduplicateRequests) {
+            this.deduplicateRequests = deduplicateRequests;
+            return this;
+        }
+
+        /**
+         * Receives the {@link CompressMetrics} of every compression run by this compressor.
+         */
+        public Builder setMetricsListener(CompressMetricsListener metricsListener) {
+            this.metricsListener = metricsListener;
+            return this;
+        }
+
+        /**
+         * Enables adaptive scheduling: as the reported pressure rises past 0.5, fewer async
+         * compressions run at once (down to one at 0.9), and from 0.75 sources are decoded at
+         * 1/2 or 1/4 of the configured size. Use {@link RuntimeMemoryPressure#forContext} on a device.
+         */
+        public Builder setMemoryPressureSource(MemoryPressureSource memoryPressureSource) {
+            this.memoryPressureSource = memoryPressureSource;
+            return this;
+        }
+
         public Builder setMaxSize(int maxSizeKB) {
-            this.config = CompressConfig.builder()
+            this.config = config.toBuilder()
                     .setMaxSize(maxSizeKB)
-                    .setQuality(config.getQuality())
-                    .setFormat(config.getFormat())
                     .build();
             return this;
         }
 
         public Builder setQuality(int quality) {
-            this.config = CompressConfig.builder()
-                    .setMaxSize(config.getMaxSize())
+            this.config = config.toBuilder()
                     .setQuality(quality)
-                    .setFormat(config.getFormat())
+                    .build();
+            return this;
+        }
+
+        public Builder setMaxDimensions(int maxWidth, int maxHeight) {
+            this.config = config.toBuilder()
+                    .setMaxWidth(maxWidth)
+                    .setMaxHeight(maxHeight)
+                    .build();
+            return this;
+        }
+
+        public Builder setMinSsim(float minSsim) {
+            this.config = config.toBuilder()
+                    .setMinSsim(minSsim)
                     .build();
             return this;
         }
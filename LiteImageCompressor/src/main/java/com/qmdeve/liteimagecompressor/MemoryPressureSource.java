@@ -0,0 +1,13 @@
+package com.qmdeve.liteimagecompressor;
+
+/**
+ * Reports how close the process is to running out of memory, read before each compression
+ * is scheduled and decoded. Set one on {@link LiteImageCompressor.Builder} to enable
+ * adaptive scheduling.
+ */
+public interface MemoryPressureSource {
+    /**
+     * Fraction of usable memory in use, from 0 (idle) to 1 (exhausted).
+     */
+    float getPressure();
+}
@@ -0,0 +1,267 @@
+package com.qmdeve.liteimagecompressor;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Two-level cache of compressed output keyed by input identity plus CompressConfig:
+ * an in-memory LRU in front of a size-bounded disk LRU. Safe to share between compressors.
+ */
+public class ResultCache {
+    private static final String ENTRY_SUFFIX = ".lic";
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    private final long memoryCacheSize;
+    private final File diskCacheDir;
+    private final long diskCacheSize;
+    private final LinkedHashMap<String, Entry> memoryCache = new LinkedHashMap<>(16, 0.75f, true);
+    private long memoryUsed;
+    private long diskUsed = -1;
+    private final Object diskLock = new Object();
+
+    private final AtomicLong memoryHitCount = new AtomicLong();
+    private final AtomicLong diskHitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+
+    private ResultCache(Builder builder) {
+        this.memoryCacheSize = builder.memoryCacheSize;
+        this.diskCacheDir = builder.diskCacheDir;
+        this.diskCacheSize = builder.diskCacheSize;
+    }
+
+    public long getHitCount() { return memoryHitCount.get() + diskHitCount.get(); }
+    public long getMemoryHitCount() { return memoryHitCount.get(); }
+    public long getDiskHitCount() { return diskHitCount.get(); }
+    public long getMissCount() { return missCount.get(); }
+
+    public void clear() {
+        synchronized (this) {
+            memoryCache.clear();
+            memoryUsed = 0;
+        }
+        synchronized (diskLock) {
+            for (File file : listEntries()) {
+                file.delete();
+            }
+            diskUsed = 0;
+        }
+    }
+
+    Entry get(String key) {
+        synchronized (this) {
+            Entry entry = memoryCache.get(key);
+            if (entry != null) {
+                memoryHitCount.incrementAndGet();
+                return entry;
+            }
+        }
+
+        Entry entry = readFromDisk(key);
+        if (entry != null) {
+            diskHitCount.incrementAndGet();
+            putInMemory(key, entry);
+            return entry;
+        }
+        missCount.incrementAndGet();
+        return null;
+    }
+
+    void put(String key, Entry entry) {
+        putInMemory(key, entry);
+        writeToDisk(key, entry);
+    }
+
+    private synchronized void putInMemory(String key, Entry entry) {
+        if (memoryCacheSize <= 0 || entry.data.length > memoryCacheSize) {
+            return;
+        }
+        Entry previous = memoryCache.put(key, entry);
+        if (previous != null) {
+            memoryUsed -= previous.data.length;
+        }
+        memoryUsed += entry.data.length;
+
+        Iterator<Map.Entry<String, Entry>> iterator = memoryCache.entrySet().iterator();
+        while (memoryUsed > memoryCacheSize && iterator.hasNext()) {
+            memoryUsed -= iterator.next().getValue().data.length;
+            iterator.remove();
+        }
+    }
+
+    private Entry readFromDisk(String key) {
+        if (diskCacheDir == null) {
+            return null;
+        }
+        synchronized (diskLock) {
+            File file = new File(diskCacheDir, key + ENTRY_SUFFIX);
+            if (!file.isFile()) {
+                return null;
+            }
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+                long originalSize = in.readLong();
+                byte[] data = new byte[in.readInt()];
+                in.readFully(data);
+                file.setLastModified(System.currentTimeMillis());
+                return new Entry(data, originalSize);
+            } catch (IOException e) {
+                long length = file.length();
+                if (file.delete() && diskUsed >= 0) {
+                    diskUsed -= length;
+                }
+                return null;
+            }
+        }
+    }
+
+    private void writeToDisk(String key, Entry entry) {
+        if (diskCacheDir == null || diskCacheSize <= 0 || entry.data.length > diskCacheSize) {
+            return;
+        }
+        synchronized (diskLock) {
+            if (!diskCacheDir.exists() && !diskCacheDir.mkdirs()) {
+                return;
+            }
+            ensureDiskUsageLoaded();
+
+            File file = new File(diskCacheDir, key + ENTRY_SUFFIX);
+            File temp = new File(diskCacheDir, key + TEMP_SUFFIX);
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+                out.writeLong(entry.originalSize);
+                out.writeInt(entry.data.length);
+                out.write(entry.data);
+            } catch (IOException e) {
+                temp.delete();
+                return;
+            }
+
+            long previous = file.length();
+            if (!temp.renameTo(file)) {
+                temp.delete();
+                return;
+            }
+            diskUsed += file.length() - previous;
+            trimDisk();
+        }
+    }
+
+    private void ensureDiskUsageLoaded() {
+        if (diskUsed >= 0) {
+            return;
+        }
+        long used = 0;
+        for (File file : listEntries()) {
+            used += file.length();
+        }
+        diskUsed = used;
+    }
+
+    private void trimDisk() {
+        if (diskUsed <= diskCacheSize) {
+            return;
+        }
+        File[] entries = listEntries();
+        Arrays.sort(entries, Comparator.comparingLong(File::lastModified));
+        for (File file : entries) {
+            if (diskUsed <= diskCacheSize) {
+                break;
+            }
+            long length = file.length();
+            if (file.delete()) {
+                diskUsed -= length;
+            }
+        }
+    }
+
+    private File[] listEntries() {
+        if (diskCacheDir == null) {
+            return new File[0];
+        }
+        File[] files = diskCacheDir.listFiles((dir, name) -> name.endsWith(ENTRY_SUFFIX));
+        return files != null ? files : new File[0];
+    }
+
+    static String fileKey(File file, CompressConfig config) {
+        return hash(("file:" + file.getAbsolutePath() + ':' + file.length() + ':' + file.lastModified() + '|'
+                + config.cacheKey()).getBytes(StandardCharsets.UTF_8), null);
+    }
+
+    static String bytesKey(byte[] data, CompressConfig config) {
+        return hash(data, ("|" + config.cacheKey()).getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String hash(byte[] first, byte[] second) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        digest.update(first);
+        if (second != null) {
+            digest.update(second);
+        }
+        byte[] bytes = digest.digest();
+        StringBuilder builder = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            builder.append(Character.forDigit((b >> 4) & 0xF, 16));
+            builder.append(Character.forDigit(b & 0xF, 16));
+        }
+        return builder.toString();
+    }
+
+    static final class Entry {
+        final byte[] data;
+        final long originalSize;
+
+        Entry(byte[] data, long originalSize) {
+            this.data = data;
+            this.originalSize = originalSize;
+        }
+    }
+
+    public static class Builder {
+        private long memoryCacheSize = 8 * 1024 * 1024;
+        private File diskCacheDir;
+        private long diskCacheSize = 64 * 1024 * 1024;
+
+        /**
+         * Byte budget of the in-memory level, 0 disables it.
+         */
+        public Builder setMemoryCacheSize(long bytes) {
+            this.memoryCacheSize = bytes;
+            return this;
+        }
+
+        /**
+         * Directory and byte budget of the disk level. Without a directory only memory is used.
+         */
+        public Builder setDiskCache(File directory, long bytes) {
+            this.diskCacheDir = directory;
+            this.diskCacheSize = bytes;
+            return this;
+        }
+
+        public ResultCache build() {
+            return new ResultCache(this);
+        }
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+}
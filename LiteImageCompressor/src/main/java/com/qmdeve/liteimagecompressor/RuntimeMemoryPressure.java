@@ -0,0 +1,80 @@
+package com.qmdeve.liteimagecompressor;
+
+import android.app.ActivityManager;
+import android.content.Context;
+import android.content.pm.ApplicationInfo;
+import android.os.Debug;
+
+/**
+ * Heap usage as a fraction of the heap limit: Runtime.maxMemory() by default, or the
+ * ActivityManager memory class when created with {@link #forContext}, whichever is lower.
+ * Created with {@link #forContext} it also weighs the native heap, where bitmap pixels live
+ * from API 26: native allocations against what the system can still hand out before it
+ * starts killing processes. The higher of the two is reported.
+ */
+public final class RuntimeMemoryPressure implements MemoryPressureSource {
+    private static final long MEMORY_INFO_INTERVAL_NANOS = 250_000_000L;
+
+    private final long heapLimit;
+    private final ActivityManager activityManager;
+    private final ActivityManager.MemoryInfo memoryInfo = new ActivityManager.MemoryInfo();
+    private long memoryInfoNanos;
+    private boolean hasMemoryInfo;
+
+    public RuntimeMemoryPressure() {
+        this(Runtime.getRuntime().maxMemory());
+    }
+
+    public RuntimeMemoryPressure(long heapLimitBytes) {
+        this(heapLimitBytes, null);
+    }
+
+    private RuntimeMemoryPressure(long heapLimitBytes, ActivityManager activityManager) {
+        if (heapLimitBytes <= 0) {
+            throw new IllegalArgumentException("Heap limit must be positive");
+        }
+        this.heapLimit = Math.min(heapLimitBytes, Runtime.getRuntime().maxMemory());
+        this.activityManager = activityManager;
+    }
+
+    public static RuntimeMemoryPressure forContext(Context context) {
+        ActivityManager activityManager = (ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE);
+        boolean largeHeap = (context.getApplicationInfo().flags & ApplicationInfo.FLAG_LARGE_HEAP) != 0;
+        int memoryClass = largeHeap ? activityManager.getLargeMemoryClass() : activityManager.getMemoryClass();
+        return new RuntimeMemoryPressure(memoryClass * 1024L * 1024L, activityManager);
+    }
+
+    @Override
+    public float getPressure() {
+        Runtime runtime = Runtime.getRuntime();
+        long used = runtime.totalMemory() - runtime.freeMemory();
+        float pressure = (float) used / heapLimit;
+        if (activityManager != null) {
+            pressure = Math.max(pressure, nativePressure());
+        }
+        return Math.max(0f, Math.min(1f, pressure));
+    }
+
+    /**
+     * Native allocations over those allocations plus the system's headroom above its
+     * low-memory threshold. MemoryInfo is a binder call, so it is refreshed at most every
+     * {@link #MEMORY_INFO_INTERVAL_NANOS}.
+     */
+    private synchronized float nativePressure() {
+        long now = System.nanoTime();
+        if (!hasMemoryInfo || now - memoryInfoNanos >= MEMORY_INFO_INTERVAL_NANOS) {
+            activityManager.getMemoryInfo(memoryInfo);
+            memoryInfoNanos = now;
+            hasMemoryInfo = true;
+        }
+        if (memoryInfo.lowMemory) {
+            return 1f;
+        }
+        long nativeUsed = Debug.getNativeHeapAllocatedSize();
+        long headroom = Math.max(0L, memoryInfo.availMem - memoryInfo.threshold);
+        if (nativeUsed + headroom <= 0) {
+            return 0f;
+        }
+        return (float) nativeUsed / (nativeUsed + headroom);
+    }
+}
@@ -0,0 +1,44 @@
+package com.qmdeve.liteimagecompressor;
+
+import android.graphics.Bitmap;
+
+/**
+ * Estimates the encoded size of a bitmap from its pixel count instead of encoding it.
+ * Bits-per-pixel figures approximate a high-quality encode of a typical camera photo.
+ */
+final class SizeEstimator {
+    private static final double JPEG_BITS_PER_PIXEL = 4.0;
+    private static final double WEBP_LOSSY_BITS_PER_PIXEL = 3.0;
+    private static final double WEBP_LOSSLESS_BITS_PER_PIXEL = 10.0;
+    private static final double PNG_BITS_PER_PIXEL = 12.0;
+
+    private SizeEstimator() {
+    }
+
+    static long estimate(Bitmap bitmap, Bitmap.CompressFormat format) {
+        long estimate = estimate(bitmap.getWidth(), bitmap.getHeight(), format);
+        return Math.max(1, Math.min(estimate, bitmap.getAllocationByteCount()));
+    }
+
+    static long estimate(int width, int height, Bitmap.CompressFormat format) {
+        return (long) Math.ceil((double) width * height * bitsPerPixel(format) / 8);
+    }
+
+    // Compare by name: WEBP_LOSSY/WEBP_LOSSLESS only exist from API 30
+    private static double bitsPerPixel(Bitmap.CompressFormat format) {
+        if (format == null) {
+            return JPEG_BITS_PER_PIXEL;
+        }
+        switch (format.name()) {
+            case "PNG":
+                return PNG_BITS_PER_PIXEL;
+            case "WEBP_LOSSLESS":
+                return WEBP_LOSSLESS_BITS_PER_PIXEL;
+            case "WEBP":
+            case "WEBP_LOSSY":
+                return WEBP_LOSSY_BITS_PER_PIXEL;
+            default:
+                return JPEG_BITS_PER_PIXEL;
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package com.qmdeve.liteimagecompressor;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+
+import com.qmdeve.liteimagecompressor.codec.EncodeBuffer;
+
+/**
+ * Structural similarity between a bitmap and its own encodes, measured at a reduced size. The
+ * source is scaled once, up front, to at most {@link #MAX_SIDE} pixels a side; each probe encodes
+ * that reference and decodes it back at the same size into a reused bitmap, so both sides of
+ * the comparison come through the same filter and only the codec's loss is measured. Probes cost
+ * a fraction of a full-resolution encode; the caller encodes the full image once at the quality
+ * the probes pick.
+ */
+final class SsimMeter {
+    static final int MAX_SIDE = 512;
+    private static final int WINDOW = 8;
+    private static final int STRIDE = 4;
+    private static final double C1 = (0.01 * 255) * (0.01 * 255);
+    private static final double C2 = (0.03 * 255) * (0.03 * 255);
+
+    private final Bitmap.CompressFormat format;
+    private final Bitmap reference;
+    private final boolean ownsReference;
+    private final Bitmap decoded;
+    private final BitmapFactory.Options options = new BitmapFactory.Options();
+    private final EncodeBuffer buffer = new EncodeBuffer(16 * 1024);
+    private final int width;
+    private final int height;
+    private final int[] pixels;
+    private final byte[] referenceLuma;
+    private final byte[] candidateLuma;
+
+    SsimMeter(Bitmap source, Bitmap.CompressFormat format) {
+        this.format = format;
+        int longestSide = Math.max(source.getWidth(), source.getHeight());
+        if (longestSide > MAX_SIDE) {
+            float scale = (float) MAX_SIDE / longestSide;
+            width = Math.max(1, Math.round(source.getWidth() * scale));
+            height = Math.max(1, Math.round(source.getHeight() * scale));
+            reference = Bitmap.createScaledBitmap(source, width, height, true);
+            ownsReference = reference != source;
+        } else {
+            width = source.getWidth();
+            height = source.getHeight();
+            reference = source;
+            ownsReference = false;
+        }
+        pixels = new int[width * height];
+        referenceLuma = new byte[width * height];
+        candidateLuma = new byte[width * height];
+        reference.getPixels(pixels, 0, width, 0, 0, width, height);
+        toLuma(pixels, referenceLuma);
+
+        decoded = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+        options.inBitmap = decoded;
+        options.inMutable = true;
+        options.inPreferredConfig = Bitmap.Config.ARGB_8888;
+    }
+
+    /**
+     * Mean SSIM, 1 for identical luma, of the reference encoded at {@code quality}.
+     */
+    double measure(int quality) {
+        buffer.reset();
+        reference.compress(format, quality, buffer);
+        Bitmap candidate = BitmapFactory.decodeByteArray(buffer.buffer(), 0, buffer.size(), options);
+        if (candidate == null) {
+            return 0;
+        }
+        boolean sameSize = candidate.getWidth() == width && candidate.getHeight() == height;
+        if (sameSize) {
+            candidate.getPixels(pixels, 0, width, 0, 0, width, height);
+        }
+        if (candidate != decoded) {
+            candidate.recycle();
+        }
+        if (!sameSize) {
+            return 0;
+        }
+        toLuma(pixels, candidateLuma);
+        return ssim();
+    }
+
+    long allocatedBytes() {
+        long planes = (long) pixels.length * 4 + referenceLuma.length + candidateLuma.length;
+        return planes + buffer.buffer().length + decoded.getAllocationByteCount()
+                + (ownsReference ? reference.getAllocationByteCount() : 0);
+    }
+
+    void release() {
+        decoded.recycle();
+        if (ownsReference) {
+            reference.recycle();
+        }
+    }
+
+    private static void toLuma(int[] argb, byte[] luma) {
+        for (int i = 0; i < argb.length; i++) {
+            int pixel = argb[i];
+            // BT.601 weights in 8-bit fixed point
+            luma[i] = (byte) ((77 * ((pixel >> 16) & 0xFF) + 150 * ((pixel >> 8) & 0xFF) + 29 * (pixel & 0xFF)) >> 8);
+        }
+    }
+
+    /**
+     * Averages SSIM over square windows placed every {@link #STRIDE} pixels, with plain
+     * (unweighted) window statistics.
+     */
+    private double ssim() {
+        int window = Math.min(WINDOW, Math.min(width, height));
+        double n = window * window;
+        double total = 0;
+        int windows = 0;
+        for (int y = 0; y + window <= height; y += STRIDE) {
+            for (int x = 0; x + window <= width; x += STRIDE) {
+                long sumA = 0;
+                long sumB = 0;
+                long sumAA = 0;
+                long sumBB = 0;
+                long sumAB = 0;
+                for (int j = 0; j < window; j++) {
+                    int row = (y + j) * width + x;
+                    for (int i = 0; i < window; i++) {
+                        int a = referenceLuma[row + i] & 0xFF;
+                        int b = candidateLuma[row + i] & 0xFF;
+                        sumA += a;
+                        sumB += b;
+                        sumAA += a * a;
+                        sumBB += b * b;
+                        sumAB += a * b;
+                    }
+                }
+                double meanA = sumA / n;
+                double meanB = sumB / n;
+                double varianceA = sumAA / n - meanA * meanA;
+                double varianceB = sumBB / n - meanB * meanB;
+                double covariance = sumAB / n - meanA * meanB;
+                total += ((2 * meanA * meanB + C1) * (2 * covariance + C2))
+                        / ((meanA * meanA + meanB * meanB + C1) * (varianceA + varianceB + C2));
+                windows++;
+            }
+        }
+        return windows == 0 ? 1 : total / windows;
+    }
+}
@@ -0,0 +1,99 @@
+package com.qmdeve.liteimagecompressor;
+
+import android.graphics.Bitmap;
+
+import com.qmdeve.liteimagecompressor.codec.EncodeBuffer;
+import com.qmdeve.liteimagecompressor.codec.TargetSizeSearch;
+
+import java.io.IOException;
+
+/**
+ * Encodes a bitmap so the output lands just under the configured maxSize. The quality search
+ * and downscaling are the codec-independent {@link TargetSizeSearch}, run on an
+ * {@link AndroidImageEncoder}. With minSsim set the starting quality is the lowest one that
+ * keeps that SSIM, found with an {@link SsimMeter}. With autoFormat the format is chosen once
+ * per bitmap by {@link FormatSelector}.
+ */
+final class TargetSizeEncoder {
+
+    static final class Outcome {
+        final EncodeBuffer data;
+        final int quality;
+        final int passes;
+        final int width;
+        final int height;
+        final long allocatedBytes;
+        final Bitmap.CompressFormat format;
+
+        Outcome(EncodeBuffer data, int quality, int passes, int width, int height, long allocatedBytes,
+                Bitmap.CompressFormat format) {
+            this.data = data;
+            this.quality = quality;
+            this.passes = passes;
+            this.width = width;
+            this.height = height;
+            this.allocatedBytes = allocatedBytes;
+            this.format = format;
+        }
+    }
+
+    private final CompressConfig config;
+    private final CompressSession session;
+    private Bitmap.CompressFormat format;
+    private int passes;
+    private long allocatedBytes;
+
+    TargetSizeEncoder(CompressConfig config, CompressSession session) {
+        this.config = config;
+        this.session = session;
+    }
+
+    Outcome encode(Bitmap bitmap) throws IOException {
+        format = config.isAutoFormat() ? FormatSelector.select(bitmap, config.getQuality()) : config.getFormat();
+        int quality = config.getMinSsim() > 0 ? perceptualQuality(bitmap) : config.getQuality();
+
+        TargetSizeSearch.Outcome searched = TargetSizeSearch.builder(new AndroidImageEncoder())
+                .setTargetBytes((long) config.getMaxSize() * 1024)
+                .setMinQuality(config.getMinQuality())
+                .setMaxEncodePasses(config.getMaxEncodePasses())
+                .setFitToTarget(config.isFitToMaxSize())
+                .setDownscaleToFit(config.isDownscaleToFit())
+                .setCheckpoint(session::checkCancelled)
+                .build()
+                .encode(new BitmapPixels(bitmap), AndroidImageEncoder.imageFormat(format), quality);
+        return new Outcome(searched.data, searched.quality, passes + searched.passes, searched.width,
+                searched.height, allocatedBytes + searched.allocatedBytes, format);
+    }
+
+    /**
+     * Lowest quality between minQuality and quality that keeps minSsim, binary searched with
+     * probe encodes of a reduced copy; the full-size bitmap is encoded only by the search in
+     * {@link #encode}. Lossless formats keep quality.
+     */
+    private int perceptualQuality(Bitmap bitmap) {
+        int high = config.getQuality();
+        if (!AndroidImageEncoder.imageFormat(format).isQualitySensitive()) {
+            return high;
+        }
+        int low = Math.min(config.getMinQuality(), high);
+        int lowest = high;
+        SsimMeter meter = new SsimMeter(bitmap, format);
+        try {
+            while (low <= high) {
+                session.checkCancelled();
+                int mid = (low + high) >>> 1;
+                passes++;
+                if (meter.measure(mid) >= config.getMinSsim()) {
+                    lowest = mid;
+                    high = mid - 1;
+                } else {
+                    low = mid + 1;
+                }
+            }
+            allocatedBytes += meter.allocatedBytes();
+        } finally {
+            meter.release();
+        }
+        return lowest;
+    }
+}
@@ -0,0 +1,18 @@
+package com.qmdeve.liteimagecompressor.callback;
+
+import com.qmdeve.liteimagecompressor.BatchCompressResult;
+import com.qmdeve.liteimagecompressor.CompressResult;
+
+/**
+ * Batch variant of {@link CompressCallback}. {@link #onStart()} fires once per batch,
+ * {@link #onItemComplete} once per input and {@link #onBatchComplete} when every item is done.
+ * {@link #onError(String)} is only used when the batch itself fails.
+ */
+public interface BatchCompressCallback extends CompressCallback {
+    void onItemComplete(int index, CompressResult result, int completedCount, int totalCount);
+    void onBatchComplete(BatchCompressResult result);
+
+    @Override
+    default void onSuccess(CompressResult result) {
+    }
+}
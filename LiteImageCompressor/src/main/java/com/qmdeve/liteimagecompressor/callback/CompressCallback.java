@@ -6,4 +6,11 @@ public interface CompressCallback {
     void onStart();
     void onSuccess(CompressResult result);
     void onError(String errorMessage);
+
+    /**
+     * Intermediate result from compressProgressive, delivered before onSuccess. Its encoded
+     * bytes are in getData(); getCompressedBitmap() decodes them on demand.
+     */
+    default void onProgress(CompressResult partial) {
+    }
 }
\ No newline at end of file
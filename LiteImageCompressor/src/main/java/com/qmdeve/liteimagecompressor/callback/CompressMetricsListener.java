@@ -0,0 +1,12 @@
+package com.qmdeve.liteimagecompressor.callback;
+
+import com.qmdeve.liteimagecompressor.CompressMetrics;
+import com.qmdeve.liteimagecompressor.CompressResult;
+
+/**
+ * Receives the metrics of every compression a compressor runs. Called on the thread that ran
+ * the compression, so implementations should only record and return.
+ */
+public interface CompressMetricsListener {
+    void onMetrics(CompressMetrics metrics, CompressResult result);
+}
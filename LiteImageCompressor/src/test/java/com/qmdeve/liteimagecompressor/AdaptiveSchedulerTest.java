@@ -0,0 +1,108 @@
+package com.qmdeve.liteimagecompressor;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+public class AdaptiveSchedulerTest {
+
+    @Test
+    public void concurrencyFallsFromMaxToOneBetweenLowAndHighPressure() {
+        assertEquals(4, AdaptiveScheduler.concurrencyFor(0f, 4));
+        assertEquals(4, AdaptiveScheduler.concurrencyFor(AdaptiveScheduler.LOW_PRESSURE, 4));
+        assertEquals(2, AdaptiveScheduler.concurrencyFor(0.7f, 4));
+        assertEquals(1, AdaptiveScheduler.concurrencyFor(AdaptiveScheduler.HIGH_PRESSURE, 4));
+        assertEquals(1, AdaptiveScheduler.concurrencyFor(1f, 4));
+        assertEquals(1, AdaptiveScheduler.concurrencyFor(0f, 1));
+    }
+
+    @Test
+    public void sampleFactorGrowsWithPressure() {
+        FakePressure pressure = new FakePressure();
+        AdaptiveScheduler scheduler = new AdaptiveScheduler(new QueuedExecutor(), pressure, 4);
+
+        pressure.value = 0.6f;
+        assertEquals(1, scheduler.sampleFactor());
+        pressure.value = AdaptiveScheduler.DOWNSAMPLE_PRESSURE;
+        assertEquals(2, scheduler.sampleFactor());
+        pressure.value = AdaptiveScheduler.HIGH_PRESSURE;
+        assertEquals(4, scheduler.sampleFactor());
+    }
+
+    @Test
+    public void queuesTasksBeyondCurrentConcurrency() {
+        FakePressure pressure = new FakePressure();
+        QueuedExecutor delegate = new QueuedExecutor();
+        AdaptiveScheduler scheduler = new AdaptiveScheduler(delegate, pressure, 4);
+        List<Integer> ran = new ArrayList<>();
+
+        pressure.value = 1f;
+        for (int i = 0; i < 3; i++) {
+            int task = i;
+            scheduler.execute(() -> ran.add(task));
+        }
+        assertEquals(1, scheduler.getConcurrency());
+        assertEquals(1, delegate.pending());
+
+        delegate.runNext();
+        assertEquals(1, delegate.pending());
+
+        pressure.value = 0f;
+        delegate.runNext();
+        assertEquals(4, scheduler.getConcurrency());
+        delegate.runNext();
+        assertEquals(0, delegate.pending());
+        assertEquals(List.of(0, 1, 2), ran);
+    }
+
+    @Test
+    public void admitsMoreTasksOnceMemoryIsFreed() {
+        FakePressure pressure = new FakePressure();
+        QueuedExecutor delegate = new QueuedExecutor();
+        AdaptiveScheduler scheduler = new AdaptiveScheduler(delegate, pressure, 4);
+
+        pressure.value = 1f;
+        for (int i = 0; i < 6; i++) {
+            scheduler.execute(() -> { });
+        }
+        assertEquals(1, delegate.pending());
+
+        pressure.value = 0f;
+        delegate.runNext();
+        assertEquals(4, delegate.pending());
+    }
+
+    private static class FakePressure implements MemoryPressureSource {
+        volatile float value;
+
+        @Override
+        public float getPressure() {
+            return value;
+        }
+    }
+
+    /**
+     * Holds tasks until the test runs them, so the scheduler's admission is observable.
+     */
+    private static class QueuedExecutor implements Executor {
+        private final ArrayDeque<Runnable> tasks = new ArrayDeque<>();
+
+        @Override
+        public void execute(Runnable task) {
+            tasks.add(task);
+        }
+
+        int pending() {
+            return tasks.size();
+        }
+
+        void runNext() {
+            tasks.poll().run();
+        }
+    }
+}
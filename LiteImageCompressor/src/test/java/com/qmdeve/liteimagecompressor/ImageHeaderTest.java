@@ -0,0 +1,226 @@
+package com.qmdeve.liteimagecompressor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+public class ImageHeaderTest {
+    // IJG luminance table at quality 50
+    private static final int[] LUMA_TABLE_Q50 = {
+            16, 11, 10, 16, 24, 40, 51, 61,
+            12, 12, 14, 19, 26, 58, 60, 55,
+            14, 13, 16, 24, 40, 57, 69, 56,
+            14, 17, 22, 29, 51, 87, 80, 62,
+            18, 22, 37, 56, 68, 109, 103, 77,
+            24, 35, 55, 64, 81, 104, 113, 92,
+            49, 64, 78, 87, 103, 121, 120, 101,
+            72, 92, 95, 98, 112, 100, 103, 99
+    };
+
+    @Test
+    public void jpegReadsFrameAfterAppSegments() {
+        byte[] jpeg = jpeg(app0(), exifOrientation(6), dqt(LUMA_TABLE_Q50), sof(640, 480));
+
+        ImageHeader header = parse(jpeg);
+        assertTrue(header.isValid());
+        assertEquals(ImageHeader.MIME_JPEG, header.mimeType);
+        assertEquals(640, header.width);
+        assertEquals(480, header.height);
+        assertEquals(6, header.orientation);
+        assertEquals(50, header.quality);
+        assertFalse(header.hasAlpha);
+    }
+
+    @Test
+    public void jpegFrameBeyondPrefixIsFoundInFile() throws IOException {
+        byte[] large = new byte[60_000];
+        byte[] jpeg = jpeg(segment(0xE2, large), segment(0xE2, large), exifOrientation(3), sof(4000, 3000));
+        File file = File.createTempFile("header", ".jpg");
+        try {
+            try (OutputStream out = new FileOutputStream(file)) {
+                out.write(jpeg);
+            }
+            ImageHeader header = ImageHeader.read(file);
+            assertTrue(header.isValid());
+            assertEquals(4000, header.width);
+            assertEquals(3000, header.height);
+            assertEquals(3, header.orientation);
+        } finally {
+            assertTrue(file.delete());
+        }
+    }
+
+    @Test
+    public void jpegWithoutFrameIsRejected() {
+        assertEquals("Truncated JPEG header", parse(jpeg(app0())).error);
+        assertEquals("JPEG has no frame header", parse(jpeg(app0(), segment(0xDA, new byte[4]))).error);
+
+        byte[] full = jpeg(app0(), sof(640, 480));
+        // Cut inside the frame dimensions
+        assertEquals("Truncated JPEG header", parse(Arrays.copyOf(full, full.length - 7)).error);
+    }
+
+    @Test
+    public void jpegWithBrokenMarkerIsRejected() {
+        byte[] jpeg = jpeg(app0(), sof(640, 480));
+        jpeg[2] = 0x12;
+        assertEquals("Corrupt JPEG header", parse(jpeg).error);
+    }
+
+    @Test
+    public void pngReadsIhdrAndTransparency() {
+        ImageHeader rgba = parse(png(6, null));
+        assertTrue(rgba.isValid());
+        assertEquals(ImageHeader.MIME_PNG, rgba.mimeType);
+        assertEquals(320, rgba.width);
+        assertEquals(200, rgba.height);
+        assertTrue(rgba.hasAlpha);
+        assertTrue(rgba.lossless);
+
+        assertFalse(parse(png(3, null)).hasAlpha);
+        assertTrue(parse(png(3, chunk("tRNS", new byte[1]))).hasAlpha);
+    }
+
+    @Test
+    public void truncatedPngIsRejected() {
+        assertEquals("Truncated PNG header", parse(Arrays.copyOf(png(6, null), 20)).error);
+    }
+
+    @Test
+    public void webpReadsEachChunkType() {
+        ByteBuffer lossy = webp("VP8 ");
+        lossy.put(23, (byte) 0x9D).put(24, (byte) 0x01).put(25, (byte) 0x2A);
+        lossy.putShort(26, (short) 1024).putShort(28, (short) 768);
+        ImageHeader vp8 = parse(lossy.array());
+        assertEquals(ImageHeader.MIME_WEBP, vp8.mimeType);
+        assertEquals(1024, vp8.width);
+        assertEquals(768, vp8.height);
+        assertFalse(vp8.lossless);
+
+        ByteBuffer lossless = webp("VP8L");
+        lossless.put(20, (byte) 0x2F).putInt(21, 99 | (49 << 14) | (1 << 28));
+        ImageHeader vp8l = parse(lossless.array());
+        assertEquals(100, vp8l.width);
+        assertEquals(50, vp8l.height);
+        assertTrue(vp8l.hasAlpha);
+        assertTrue(vp8l.lossless);
+
+        ByteBuffer extended = webp("VP8X");
+        extended.put(20, (byte) 0x10);
+        extended.put(24, (byte) 0xFF).put(25, (byte) 0x0F);
+        extended.put(27, (byte) 0x1F).put(28, (byte) 0x03);
+        ImageHeader vp8x = parse(extended.array());
+        assertEquals(4096, vp8x.width);
+        assertEquals(800, vp8x.height);
+        assertTrue(vp8x.hasAlpha);
+    }
+
+    @Test
+    public void brokenWebpIsRejected() {
+        assertEquals("Truncated WebP header", parse(Arrays.copyOf(webp("VP8 ").array(), 24)).error);
+        assertEquals("Corrupt WebP header", parse(webp("VP8 ").array()).error);
+        assertEquals("Corrupt WebP header", parse(webp("ABCD").array()).error);
+    }
+
+    @Test
+    public void tinyAndUnknownInputsAreRejected() {
+        assertEquals("File is too small to be an image", parse(new byte[]{(byte) 0xFF, (byte) 0xD8}).error);
+        assertEquals("Unsupported image format", parse("not an image".getBytes()).error);
+        ImageHeader empty = parse(new byte[0]);
+        assertFalse(empty.isValid());
+        assertNull(empty.mimeType);
+    }
+
+    private static ImageHeader parse(byte[] data) {
+        return ImageHeader.parse(data, data.length);
+    }
+
+    private static byte[] jpeg(byte[]... segments) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(0xFF);
+        out.write(0xD8);
+        for (byte[] segment : segments) {
+            out.write(segment, 0, segment.length);
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] segment(int marker, byte[] payload) {
+        ByteBuffer segment = ByteBuffer.allocate(4 + payload.length);
+        segment.put((byte) 0xFF).put((byte) marker).putShort((short) (2 + payload.length)).put(payload);
+        return segment.array();
+    }
+
+    private static byte[] app0() {
+        return segment(0xE0, new byte[]{'J', 'F', 'I', 'F', 0, 1, 1, 0, 0, 1, 0, 1, 0, 0});
+    }
+
+    private static byte[] exifOrientation(int orientation) {
+        ByteBuffer exif = ByteBuffer.allocate(6 + 8 + 2 + 12 + 4);
+        exif.put(new byte[]{'E', 'x', 'i', 'f', 0, 0});
+        exif.putShort((short) 0x4D4D).putShort((short) 42).putInt(8);
+        exif.putShort((short) 1);
+        exif.putShort((short) 0x0112).putShort((short) 3).putInt(1).putShort((short) orientation).putShort((short) 0);
+        exif.putInt(0);
+        return segment(0xE1, exif.array());
+    }
+
+    private static byte[] dqt(int[] table) {
+        byte[] payload = new byte[65];
+        for (int i = 0; i < 64; i++) {
+            payload[1 + i] = (byte) table[i];
+        }
+        return segment(0xDB, payload);
+    }
+
+    private static byte[] sof(int width, int height) {
+        ByteBuffer frame = ByteBuffer.allocate(9);
+        frame.put((byte) 8).putShort((short) height).putShort((short) width);
+        frame.put((byte) 1).put((byte) 1).put((byte) 0x11).put((byte) 0);
+        return segment(0xC0, frame.array());
+    }
+
+    private static byte[] png(int colorType, byte[] extraChunk) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] signature = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'};
+        out.write(signature, 0, signature.length);
+        ByteBuffer ihdr = ByteBuffer.allocate(13);
+        ihdr.putInt(320).putInt(200).put((byte) 8).put((byte) colorType);
+        byte[] ihdrChunk = chunk("IHDR", ihdr.array());
+        out.write(ihdrChunk, 0, ihdrChunk.length);
+        if (extraChunk != null) {
+            out.write(extraChunk, 0, extraChunk.length);
+        }
+        byte[] idat = chunk("IDAT", new byte[4]);
+        out.write(idat, 0, idat.length);
+        return out.toByteArray();
+    }
+
+    private static byte[] chunk(String type, byte[] data) {
+        ByteBuffer chunk = ByteBuffer.allocate(12 + data.length);
+        chunk.putInt(data.length).put(type.getBytes()).put(data).putInt(0);
+        return chunk.array();
+    }
+
+    /**
+     * A 40 byte RIFF/WEBP container with an empty {@code chunk}, little endian for the caller
+     * to fill in the chunk header fields.
+     */
+    private static ByteBuffer webp(String chunk) {
+        ByteBuffer webp = ByteBuffer.allocate(40).order(ByteOrder.LITTLE_ENDIAN);
+        webp.put("RIFF".getBytes()).putInt(32).put("WEBP".getBytes()).put(chunk.getBytes()).putInt(20);
+        return webp;
+    }
+}
@@ -0,0 +1,93 @@
+package com.qmdeve.liteimagecompressor.benchmark;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Fixed, deterministic set of synthetic photos so results are comparable across releases.
+ * Images mix smooth gradients, hard edges and low-amplitude noise, roughly like a camera photo.
+ */
+final class BenchmarkCorpus {
+    private static final long SEED = 0x5EEDL;
+    private static final int SOURCE_QUALITY = 95;
+
+    enum ImageSize {
+        SMALL(800, 600),
+        MEDIUM(2000, 1500),
+        LARGE(4000, 3000);
+
+        final int width;
+        final int height;
+
+        ImageSize(int width, int height) {
+            this.width = width;
+            this.height = height;
+        }
+    }
+
+    private BenchmarkCorpus() {
+    }
+
+    static Bitmap createBitmap(ImageSize size) {
+        Bitmap bitmap = Bitmap.createBitmap(size.width, size.height, Bitmap.Config.ARGB_8888);
+        Random random = new Random(SEED);
+        int[] row = new int[size.width];
+        int blockSize = Math.max(16, size.width / 12);
+        for (int y = 0; y < size.height; y++) {
+            for (int x = 0; x < size.width; x++) {
+                int noise = random.nextInt(17) - 8;
+                boolean edge = ((x / blockSize) + (y / blockSize)) % 5 == 0;
+                int r = clamp(x * 255 / size.width + noise + (edge ? 60 : 0));
+                int g = clamp(y * 255 / size.height + noise);
+                int b = clamp((x + y) * 255 / (size.width + size.height) + noise - (edge ? 60 : 0));
+                row[x] = 0xFF000000 | (r << 16) | (g << 8) | b;
+            }
+            bitmap.setPixels(row, 0, size.width, 0, y, size.width, 1);
+        }
+        return bitmap;
+    }
+
+    /**
+     * Returns the corpus file for the size and format, encoding it on first use.
+     */
+    static File getFile(Context context, ImageSize size, Bitmap.CompressFormat format) throws IOException {
+        File dir = new File(context.getCacheDir(), "benchmark-corpus");
+        if (!dir.exists() && !dir.mkdirs()) {
+            throw new IOException("Cannot create " + dir);
+        }
+        File file = new File(dir, size.name().toLowerCase(Locale.US) + "." + extension(format));
+        if (file.length() > 0) {
+            return file;
+        }
+
+        Bitmap bitmap = createBitmap(size);
+        try (OutputStream out = new FileOutputStream(file)) {
+            bitmap.compress(format, SOURCE_QUALITY, out);
+        } finally {
+            bitmap.recycle();
+        }
+        return file;
+    }
+
+    private static String extension(Bitmap.CompressFormat format) {
+        switch (format) {
+            case PNG:
+                return "png";
+            case JPEG:
+                return "jpg";
+            default:
+                return "webp";
+        }
+    }
+
+    private static int clamp(int value) {
+        return Math.max(0, Math.min(255, value));
+    }
+}
@@ -0,0 +1,137 @@
+package com.qmdeve.liteimagecompressor.benchmark;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+
+import androidx.benchmark.BenchmarkState;
+import androidx.benchmark.junit4.BenchmarkRule;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.qmdeve.liteimagecompressor.CompressConfig;
+import com.qmdeve.liteimagecompressor.CompressResult;
+import com.qmdeve.liteimagecompressor.LiteImageCompressor;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Measures the compressSync pipeline over a fixed corpus of sizes and formats:
+ * <ul>
+ *     <li>compressFromFile: compressSync(File), decode + encode + result decode</li>
+ *     <li>compressFromBitmap: compressSync(Bitmap), threshold check plus compression when needed</li>
+ *     <li>performCompression: compressSync(Bitmap, originalSize) forced past the threshold</li>
+ * </ul>
+ * Run with {@code ./gradlew :benchmark:connectedReleaseAndroidTest}.
+ */
+@RunWith(Parameterized.class)
+public class CompressBenchmark {
+    private static final int MAX_SIZE_KB = 200;
+    private static final int QUALITY = 80;
+
+    @Rule
+    public BenchmarkRule benchmarkRule = new BenchmarkRule();
+
+    private final BenchmarkCorpus.ImageSize size;
+    private final Bitmap.CompressFormat format;
+
+    private LiteImageCompressor compressor;
+    private File sourceFile;
+    private Bitmap sourceBitmap;
+
+    public CompressBenchmark(BenchmarkCorpus.ImageSize size, Bitmap.CompressFormat format) {
+        this.size = size;
+        this.format = format;
+    }
+
+    @Parameterized.Parameters(name = "{0}_{1}")
+    public static Collection<Object[]> parameters() {
+        List<Object[]> parameters = new ArrayList<>();
+        Bitmap.CompressFormat[] formats = {
+                Bitmap.CompressFormat.JPEG,
+                Bitmap.CompressFormat.PNG,
+                Bitmap.CompressFormat.WEBP
+        };
+        for (BenchmarkCorpus.ImageSize size : BenchmarkCorpus.ImageSize.values()) {
+            for (Bitmap.CompressFormat format : formats) {
+                parameters.add(new Object[]{size, format});
+            }
+        }
+        return parameters;
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        sourceFile = BenchmarkCorpus.getFile(context, size, format);
+        sourceBitmap = BenchmarkCorpus.createBitmap(size);
+        compressor = LiteImageCompressor.builder()
+                .setConfig(CompressConfig.builder()
+                        .setMaxSize(MAX_SIZE_KB)
+                        .setQuality(QUALITY)
+                        .setFormat(format)
+                        .build())
+                .build();
+    }
+
+    @After
+    public void tearDown() {
+        sourceBitmap.recycle();
+    }
+
+    @Test
+    public void compressFromFile() throws Exception {
+        BenchmarkState state = benchmarkRule.getState();
+        while (state.keepRunning()) {
+            CompressResult result = compressor.compressSync(sourceFile);
+            state.pauseTiming();
+            release(result);
+            state.resumeTiming();
+        }
+        PipelineProfiler.profile(name("compressFromFile"), () -> compressor.compressSync(sourceFile), this::release);
+    }
+
+    @Test
+    public void compressFromBitmap() throws Exception {
+        BenchmarkState state = benchmarkRule.getState();
+        while (state.keepRunning()) {
+            CompressResult result = compressor.compressSync(sourceBitmap);
+            state.pauseTiming();
+            release(result);
+            state.resumeTiming();
+        }
+        PipelineProfiler.profile(name("compressFromBitmap"), () -> compressor.compressSync(sourceBitmap), this::release);
+    }
+
+    @Test
+    public void performCompression() throws Exception {
+        BenchmarkState state = benchmarkRule.getState();
+        while (state.keepRunning()) {
+            CompressResult result = compressor.compressSync(sourceBitmap, Long.MAX_VALUE);
+            state.pauseTiming();
+            release(result);
+            state.resumeTiming();
+        }
+        PipelineProfiler.profile(name("performCompression"),
+                () -> compressor.compressSync(sourceBitmap, Long.MAX_VALUE), this::release);
+    }
+
+    private String name(String operation) {
+        return operation + "_" + size + "_" + format;
+    }
+
+    private void release(CompressResult result) {
+        Bitmap bitmap = result.getCompressedBitmap();
+        if (bitmap != null && bitmap != sourceBitmap) {
+            bitmap.recycle();
+        }
+    }
+}
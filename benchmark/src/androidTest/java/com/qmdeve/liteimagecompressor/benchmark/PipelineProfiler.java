@@ -0,0 +1,123 @@
+package com.qmdeve.liteimagecompressor.benchmark;
+
+import android.os.Bundle;
+import android.os.Debug;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.qmdeve.liteimagecompressor.CompressResult;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Untimed companion pass to each benchmark: reports latency percentiles, bytes allocated
+ * per operation, peak heap and output ratio, which BenchmarkRule does not cover.
+ * Values go to logcat and to the instrumentation status so CI can pick them up.
+ */
+final class PipelineProfiler {
+    private static final String TAG = "LiteImageBenchmark";
+    private static final int ITERATIONS = 20;
+    private static final long SAMPLE_INTERVAL_MS = 1;
+
+    interface Operation {
+        CompressResult run() throws Exception;
+    }
+
+    interface Cleanup {
+        void afterRun(CompressResult result);
+    }
+
+    private PipelineProfiler() {
+    }
+
+    static void profile(String name, Operation operation, Cleanup cleanup) throws Exception {
+        // Warm up once so class loading and JIT do not skew the first sample
+        cleanup.afterRun(operation.run());
+        Runtime.getRuntime().gc();
+
+        long[] latencies = new long[ITERATIONS];
+        HeapSampler sampler = new HeapSampler();
+        double ratio = 0;
+        long allocatedBefore = bytesAllocated();
+        sampler.start();
+        try {
+            for (int i = 0; i < ITERATIONS; i++) {
+                long start = SystemClock.elapsedRealtimeNanos();
+                CompressResult result = operation.run();
+                latencies[i] = SystemClock.elapsedRealtimeNanos() - start;
+                if (result.getOriginalSize() > 0) {
+                    ratio = (double) result.getCompressedSize() / result.getOriginalSize();
+                }
+                cleanup.afterRun(result);
+            }
+        } finally {
+            sampler.stopAndJoin();
+        }
+        long allocatedPerOp = (bytesAllocated() - allocatedBefore) / ITERATIONS;
+
+        Arrays.sort(latencies);
+        Bundle status = new Bundle();
+        status.putLong(name + "_p50_ns", percentile(latencies, 50));
+        status.putLong(name + "_p90_ns", percentile(latencies, 90));
+        status.putLong(name + "_p99_ns", percentile(latencies, 99));
+        status.putLong(name + "_alloc_bytes_per_op", allocatedPerOp);
+        status.putLong(name + "_peak_heap_bytes", sampler.peak);
+        status.putDouble(name + "_output_ratio", ratio);
+        InstrumentationRegistry.getInstrumentation().sendStatus(0, status);
+
+        Log.i(TAG, String.format(Locale.US,
+                "%s p50=%.2fms p90=%.2fms p99=%.2fms alloc/op=%dKB peakHeap=%dKB ratio=%.3f",
+                name,
+                percentile(latencies, 50) / 1e6,
+                percentile(latencies, 90) / 1e6,
+                percentile(latencies, 99) / 1e6,
+                allocatedPerOp / 1024,
+                sampler.peak / 1024,
+                ratio));
+    }
+
+    private static long percentile(long[] sorted, int percent) {
+        int index = (int) Math.ceil(percent / 100.0 * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(sorted.length - 1, index))];
+    }
+
+    private static long bytesAllocated() {
+        String value = Debug.getRuntimeStat("art.gc.bytes-allocated");
+        return value != null ? Long.parseLong(value) : 0;
+    }
+
+    /**
+     * Java heap in use plus native heap, since bitmap pixels live in the native heap from API 26.
+     */
+    private static long heapInUse() {
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory() + Debug.getNativeHeapAllocatedSize();
+    }
+
+    private static final class HeapSampler extends Thread {
+        private volatile boolean running = true;
+        private volatile long peak;
+
+        HeapSampler() {
+            super("HeapSampler");
+            setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            while (running) {
+                peak = Math.max(peak, heapInUse());
+                SystemClock.sleep(SAMPLE_INTERVAL_MS);
+            }
+        }
+
+        void stopAndJoin() throws InterruptedException {
+            running = false;
+            join();
+            peak = Math.max(peak, heapInUse());
+        }
+    }
+}